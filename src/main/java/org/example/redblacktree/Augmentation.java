@@ -0,0 +1,9 @@
+package org.example.redblacktree;
+
+public interface Augmentation<T, S> {
+
+    S measure(T value);
+
+    // has to be associative, it is applied to the summaries of the left subtree, the node and the right subtree in order
+    S combine(S left, S right);
+}
@@ -0,0 +1,30 @@
+package org.example.redblacktree;
+
+public class AugmentedNode<T extends Comparable<T>, S> extends Node<T> {
+    private final S summary;
+
+    public AugmentedNode(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight, Augmentation<T, S> augmentation) {
+        super(value, colour, childLeft, childRight);
+        S summary = combine(augmentation, summary(childLeft), augmentation.measure(value));
+        this.summary = combine(augmentation, summary, summary(childRight));
+    }
+
+    public S getSummary() {
+        return summary;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T extends Comparable<T>, S> S summary(Node<T> node) {
+        return node instanceof AugmentedNode ? ((AugmentedNode<T, S>) node).getSummary() : null;
+    }
+
+    static <T, S> S combine(Augmentation<T, S> augmentation, S left, S right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        return augmentation.combine(left, right);
+    }
+}
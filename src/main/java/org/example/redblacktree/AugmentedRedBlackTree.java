@@ -0,0 +1,129 @@
+package org.example.redblacktree;
+
+/**
+ * Red-black tree whose nodes carry the summary of their subtree under an associative
+ * {@link Augmentation}. Summaries are rebuilt along with every path copy and rotation,
+ * so range aggregates cost O(log n) on the current and every historical version.
+ */
+public class AugmentedRedBlackTree<T extends Comparable<T>, S> extends RedBlackTree<T> {
+    private final Augmentation<T, S> augmentation;
+    private SnapshotCache<AugmentedRedBlackTree<T, S>> snapshots;
+
+    public AugmentedRedBlackTree(Augmentation<T, S> augmentation) {
+        this.augmentation = augmentation;
+    }
+
+    protected AugmentedRedBlackTree(Augmentation<T, S> augmentation, Version<T> snapshot) {
+        super(snapshot);
+        this.augmentation = augmentation;
+    }
+
+    protected AugmentedRedBlackTree(AugmentedRedBlackTree<T, S> parentBranch, int forkVersion) {
+        super(parentBranch, forkVersion);
+        this.augmentation = parentBranch.augmentation;
+    }
+
+    @Override
+    protected Node<T> newNode(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight) {
+        return new AugmentedNode<>(value, colour, childLeft, childRight, augmentation);
+    }
+
+    public Augmentation<T, S> getAugmentation() {
+        return augmentation;
+    }
+
+    public S aggregate() {
+        return AugmentedNode.summary(getRoot());
+    }
+
+    public S aggregate(T from, T to) {
+        return aggregate(getRoot(), from, to);
+    }
+
+    private S aggregate(Node<T> node, T from, T to) {
+        while (node != null) {
+            if (node.getValue().compareTo(from) < 0) {
+                node = node.getChildRight();
+            } else if (node.getValue().compareTo(to) > 0) {
+                node = node.getChildLeft();
+            } else {
+                // the range splits here: the left subtree is bounded by from, the right one by to
+                S summary = combine(aggregateFrom(node.getChildLeft(), from), augmentation.measure(node.getValue()));
+                return combine(summary, aggregateTo(node.getChildRight(), to));
+            }
+        }
+        return null;
+    }
+
+    private S aggregateFrom(Node<T> node, T from) {
+        S summary = null;
+        while (node != null) {
+            if (node.getValue().compareTo(from) < 0) {
+                node = node.getChildRight();
+            } else {
+                S right = combine(augmentation.measure(node.getValue()), AugmentedNode.summary(node.getChildRight()));
+                summary = combine(right, summary);
+                node = node.getChildLeft();
+            }
+        }
+        return summary;
+    }
+
+    private S aggregateTo(Node<T> node, T to) {
+        S summary = null;
+        while (node != null) {
+            if (node.getValue().compareTo(to) > 0) {
+                node = node.getChildLeft();
+            } else {
+                S left = combine(AugmentedNode.summary(node.getChildLeft()), augmentation.measure(node.getValue()));
+                summary = combine(summary, left);
+                node = node.getChildRight();
+            }
+        }
+        return summary;
+    }
+
+    private S combine(S left, S right) {
+        return AugmentedNode.combine(augmentation, left, right);
+    }
+
+    @Override
+    protected AugmentedRedBlackTree<T, S> newBranch(int version) {
+        return new AugmentedRedBlackTree<>(this, version);
+    }
+
+    @Override
+    protected AugmentedRedBlackTree<T, S> newSnapshot(Version<T> version) {
+        return new AugmentedRedBlackTree<>(augmentation, version);
+    }
+
+    @Override
+    SnapshotCache<? extends AugmentedRedBlackTree<T, S>> snapshotCache() {
+        if (snapshots == null) {
+            snapshots = new SnapshotCache<>(version -> ownSnapshot(newSnapshot(getVersionInfo(version)), version));
+        }
+        return snapshots;
+    }
+
+    @Override
+    public AugmentedRedBlackTree<T, S> branch(int version) {
+        prepareBranch(version);
+        return newBranch(version);
+    }
+
+    @Override
+    public AugmentedRedBlackTree<T, S> branch() {
+        return branch(getHeadVersion());
+    }
+
+    @Override
+    public AugmentedRedBlackTree<T, S> getVersion(int version) {
+        getRoot(version);
+        return snapshotCache().get(version);
+    }
+
+    @Override
+    public AugmentedRedBlackTree<T, S> getPreviousVersion() {
+        return getVersion(getHeadVersion() - 1);
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.redblacktree;
+
+import java.util.Arrays;
+
+public final class BPlusNode<T extends Comparable<T>> {
+    final Object[] keys;
+    // null for leaves; internal nodes have one child more than separator keys
+    final BPlusNode<T>[] children;
+
+    BPlusNode(Object[] keys, BPlusNode<T>[] children) {
+        this.keys = keys;
+        this.children = children;
+    }
+
+    public boolean isLeaf() {
+        return children == null;
+    }
+
+    public int getKeyCount() {
+        return keys.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getKey(int index) {
+        return (T) keys[index];
+    }
+
+    public int getChildCount() {
+        return isLeaf() ? 0 : children.length;
+    }
+
+    public BPlusNode<T> getChild(int index) {
+        return children[index];
+    }
+
+    int entryCount() {
+        return isLeaf() ? keys.length : children.length;
+    }
+
+    @Override
+    public String toString() {
+        if (isLeaf()) {
+            return Arrays.toString(keys);
+        }
+        StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < children.length; i++) {
+            if (i > 0) {
+                builder.append(" ").append(keys[i - 1]).append(" ");
+            }
+            builder.append(children[i]);
+        }
+        return builder.append(")").toString();
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.redblacktree;
+
+public class CountedNode<T extends Comparable<T>> extends Node<T> {
+    private final int count;
+    private final long totalCount;
+
+    public CountedNode(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight, int count) {
+        super(value, colour, childLeft, childRight, count);
+        this.count = count;
+        this.totalCount = totalCount(childLeft) + count + totalCount(childRight);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    // nodes that were not created by a multiset (the delete sentinel) stand for a single occurrence
+    static int count(Node<?> node) {
+        return node instanceof CountedNode ? ((CountedNode<?>) node).count : 1;
+    }
+
+    static long totalCount(Node<?> node) {
+        if (node == null) {
+            return 0;
+        }
+        return node instanceof CountedNode ? ((CountedNode<?>) node).totalCount : 1;
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.redblacktree;
+
+import java.util.Objects;
+
+public class Interval<P extends Comparable<P>> implements Comparable<Interval<P>> {
+    private final P start;
+    private final P end;
+
+    public Interval(P start, P end) {
+        if (start.compareTo(end) > 0) {
+            throw new IllegalArgumentException("interval start " + start + " is after its end " + end);
+        }
+        this.start = start;
+        this.end = end;
+    }
+
+    public P getStart() {
+        return start;
+    }
+
+    public P getEnd() {
+        return end;
+    }
+
+    public boolean overlaps(P from, P to) {
+        return start.compareTo(to) <= 0 && end.compareTo(from) >= 0;
+    }
+
+    @Override
+    public int compareTo(Interval<P> interval) {
+        int comparison = start.compareTo(interval.start);
+        return comparison != 0 ? comparison : end.compareTo(interval.end);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Interval<?> interval = (Interval<?>) o;
+
+        return start.equals(interval.start) && end.equals(interval.end);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + "]";
+    }
+}
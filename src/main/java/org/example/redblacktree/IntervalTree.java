@@ -0,0 +1,109 @@
+package org.example.redblacktree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned interval tree: a red-black tree ordered by interval start whose nodes are augmented
+ * with the maximum end point of their subtree.
+ */
+public class IntervalTree<P extends Comparable<P>> extends AugmentedRedBlackTree<Interval<P>, P> {
+    private SnapshotCache<IntervalTree<P>> snapshots;
+
+    public IntervalTree() {
+        super(maxEnd());
+    }
+
+    protected IntervalTree(Version<Interval<P>> snapshot) {
+        super(maxEnd(), snapshot);
+    }
+
+    protected IntervalTree(IntervalTree<P> parentBranch, int forkVersion) {
+        super(parentBranch, forkVersion);
+    }
+
+    private static <P extends Comparable<P>> Augmentation<Interval<P>, P> maxEnd() {
+        return new Augmentation<>() {
+            @Override
+            public P measure(Interval<P> value) {
+                return value.getEnd();
+            }
+
+            @Override
+            public P combine(P left, P right) {
+                return left.compareTo(right) >= 0 ? left : right;
+            }
+        };
+    }
+
+    public void insert(P start, P end) {
+        insert(new Interval<>(start, end));
+    }
+
+    public void delete(P start, P end) {
+        delete(new Interval<>(start, end));
+    }
+
+    public List<Interval<P>> overlapping(P from, P to) {
+        List<Interval<P>> result = new ArrayList<>();
+        collectOverlapping(getRoot(), from, to, result);
+        return result;
+    }
+
+    private void collectOverlapping(Node<Interval<P>> node, P from, P to, List<Interval<P>> result) {
+        // no interval in this subtree reaches from
+        if (node == null || AugmentedNode.<Interval<P>, P>summary(node).compareTo(from) < 0) {
+            return;
+        }
+        collectOverlapping(node.getChildLeft(), from, to, result);
+        Interval<P> interval = node.getValue();
+        // this interval and the whole right subtree start after to
+        if (interval.getStart().compareTo(to) > 0) {
+            return;
+        }
+        if (interval.overlaps(from, to)) {
+            result.add(interval);
+        }
+        collectOverlapping(node.getChildRight(), from, to, result);
+    }
+
+    @Override
+    protected IntervalTree<P> newBranch(int version) {
+        return new IntervalTree<>(this, version);
+    }
+
+    @Override
+    protected IntervalTree<P> newSnapshot(Version<Interval<P>> version) {
+        return new IntervalTree<>(version);
+    }
+
+    @Override
+    SnapshotCache<? extends IntervalTree<P>> snapshotCache() {
+        if (snapshots == null) {
+            snapshots = new SnapshotCache<>(version -> ownSnapshot(newSnapshot(getVersionInfo(version)), version));
+        }
+        return snapshots;
+    }
+
+    @Override
+    public IntervalTree<P> branch(int version) {
+        prepareBranch(version);
+        return newBranch(version);
+    }
+
+    @Override
+    public IntervalTree<P> branch() {
+        return branch(getHeadVersion());
+    }
+
+    @Override
+    public IntervalTree<P> getVersion(int version) {
+        getRoot(version);
+        return snapshotCache().get(version);
+    }
+
+    @Override
+    public IntervalTree<P> getPreviousVersion() {
+        return getVersion(getHeadVersion() - 1);
+    }
+}
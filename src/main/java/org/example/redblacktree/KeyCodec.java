@@ -0,0 +1,72 @@
+package org.example.redblacktree;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public interface KeyCodec<T> {
+
+    int encodedLength(T value);
+
+    void encode(T value, ByteBuffer buffer);
+
+    T decode(ByteBuffer buffer, int length);
+
+    static KeyCodec<Integer> integers() {
+        return new KeyCodec<>() {
+            @Override
+            public int encodedLength(Integer value) {
+                return Integer.BYTES;
+            }
+
+            @Override
+            public void encode(Integer value, ByteBuffer buffer) {
+                buffer.putInt(value);
+            }
+
+            @Override
+            public Integer decode(ByteBuffer buffer, int length) {
+                return buffer.getInt();
+            }
+        };
+    }
+
+    static KeyCodec<Long> longs() {
+        return new KeyCodec<>() {
+            @Override
+            public int encodedLength(Long value) {
+                return Long.BYTES;
+            }
+
+            @Override
+            public void encode(Long value, ByteBuffer buffer) {
+                buffer.putLong(value);
+            }
+
+            @Override
+            public Long decode(ByteBuffer buffer, int length) {
+                return buffer.getLong();
+            }
+        };
+    }
+
+    static KeyCodec<String> strings() {
+        return new KeyCodec<>() {
+            @Override
+            public int encodedLength(String value) {
+                return value.getBytes(StandardCharsets.UTF_8).length;
+            }
+
+            @Override
+            public void encode(String value, ByteBuffer buffer) {
+                buffer.put(value.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public String decode(ByteBuffer buffer, int length) {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
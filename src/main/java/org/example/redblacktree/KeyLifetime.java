@@ -0,0 +1,53 @@
+package org.example.redblacktree;
+
+public class KeyLifetime {
+    public static final int STILL_PRESENT = -1;
+
+    private final int insertedAt;
+    private final int deletedAt;
+
+    public KeyLifetime(int insertedAt, int deletedAt) {
+        this.insertedAt = insertedAt;
+        this.deletedAt = deletedAt;
+    }
+
+    public int getInsertedAt() {
+        return insertedAt;
+    }
+
+    public int getDeletedAt() {
+        return deletedAt;
+    }
+
+    public boolean isStillPresent() {
+        return deletedAt == STILL_PRESENT;
+    }
+
+    public boolean contains(int version) {
+        return version >= insertedAt && (isStillPresent() || version < deletedAt);
+    }
+
+    KeyLifetime close(int version) {
+        return new KeyLifetime(insertedAt, version);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        KeyLifetime lifetime = (KeyLifetime) o;
+
+        return insertedAt == lifetime.insertedAt && deletedAt == lifetime.deletedAt;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * insertedAt + deletedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + insertedAt + ", " + (isStillPresent() ? "" : deletedAt) + ")";
+    }
+}
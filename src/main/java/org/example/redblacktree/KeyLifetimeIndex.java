@@ -0,0 +1,116 @@
+package org.example.redblacktree;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Per-key version intervals [insertedAt, deletedAt) of one branch history. Lifetimes that lie
+ * entirely within released versions are never reported and are dropped once enough versions were
+ * released to pay for a pass over the index, so a trimmed history keeps the index bounded by the
+ * keys of its retained versions.
+ */
+class KeyLifetimeIndex<T extends Comparable<T>> {
+    private final TreeMap<T, List<KeyLifetime>> lifetimes = new TreeMap<>();
+    private final BitSet releasedVersions = new BitSet();
+    private int lifetimeCount;
+    private int releasedSincePrune;
+
+    void inserted(T value, int version) {
+        lifetimes.computeIfAbsent(value, key -> new ArrayList<>(1)).add(new KeyLifetime(version, KeyLifetime.STILL_PRESENT));
+        lifetimeCount++;
+    }
+
+    void deleted(T value, int version) {
+        List<KeyLifetime> keyLifetimes = lifetimes.get(value);
+        if (keyLifetimes == null || !keyLifetimes.get(keyLifetimes.size() - 1).isStillPresent()) {
+            throw new IllegalStateException("index has no open lifetime for " + value);
+        }
+        keyLifetimes.set(keyLifetimes.size() - 1, keyLifetimes.get(keyLifetimes.size() - 1).close(version));
+    }
+
+    void released(int version) {
+        releasedVersions.set(version);
+        // a pass costs one step per lifetime, so it waits until the releases since the last one cover an eighth of them
+        if (++releasedSincePrune > lifetimeCount >>> 3) {
+            prune();
+        }
+    }
+
+    // the index as seen by a branch forked at version, lifetimes ending after it are still open there
+    KeyLifetimeIndex<T> truncatedTo(int version) {
+        KeyLifetimeIndex<T> truncated = new KeyLifetimeIndex<>();
+        truncated.releasedVersions.or(releasedVersions.get(0, version + 1));
+        lifetimes.forEach((value, keyLifetimes) -> {
+            List<KeyLifetime> kept = new ArrayList<>(keyLifetimes.size());
+            for (KeyLifetime lifetime : keyLifetimes) {
+                if (lifetime.getInsertedAt() > version) {
+                    break;
+                }
+                if (!isReleased(lifetime)) {
+                    kept.add(lifetime.contains(version) ? new KeyLifetime(lifetime.getInsertedAt(), KeyLifetime.STILL_PRESENT) : lifetime);
+                }
+            }
+            if (!kept.isEmpty()) {
+                truncated.lifetimes.put(value, kept);
+                truncated.lifetimeCount += kept.size();
+            }
+        });
+        return truncated;
+    }
+
+    List<KeyLifetime> getLifetimes(T value) {
+        List<KeyLifetime> keyLifetimes = lifetimes.get(value);
+        if (keyLifetimes == null) {
+            return List.of();
+        }
+        // lifetimes released since the last pass are filtered here, so the result never depends on its timing
+        List<KeyLifetime> retained = new ArrayList<>(keyLifetimes.size());
+        for (KeyLifetime lifetime : keyLifetimes) {
+            if (!isReleased(lifetime)) {
+                retained.add(lifetime);
+            }
+        }
+        return Collections.unmodifiableList(retained);
+    }
+
+    boolean containsAt(T value, int version) {
+        List<KeyLifetime> keyLifetimes = lifetimes.get(value);
+        if (keyLifetimes == null) {
+            return false;
+        }
+        // lifetimes are disjoint and ordered, find the last one starting at or before the version
+        int low = 0;
+        int high = keyLifetimes.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (keyLifetimes.get(middle).getInsertedAt() <= version) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high >= 0 && keyLifetimes.get(high).contains(version);
+    }
+
+    int size() {
+        return lifetimeCount;
+    }
+
+    private void prune() {
+        releasedSincePrune = 0;
+        lifetimes.values().removeIf(keyLifetimes -> {
+            int before = keyLifetimes.size();
+            keyLifetimes.removeIf(this::isReleased);
+            lifetimeCount -= before - keyLifetimes.size();
+            return keyLifetimes.isEmpty();
+        });
+    }
+
+    // an open lifetime reaches the head, which is never released
+    private boolean isReleased(KeyLifetime lifetime) {
+        return !lifetime.isStillPresent() && releasedVersions.nextClearBit(lifetime.getInsertedAt()) >= lifetime.getDeletedAt();
+    }
+}
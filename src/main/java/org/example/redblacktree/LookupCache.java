@@ -0,0 +1,149 @@
+package org.example.redblacktree;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Bounded point lookup cache with CLOCK eviction. Entries remember the number of the version they
+ * were looked up in and only hit for that same version, so every commit invalidates the cache
+ * without any work; stale entries are overwritten or evicted as usual. Releasing a version drops
+ * the nodes cached for it, so a cold slot never keeps a released version reachable. Absent keys
+ * are cached as well. Every 64th lookup is timed, separately for hits and misses. Not thread-safe.
+ */
+public class LookupCache<T extends Comparable<T>> {
+    private static final int SAMPLE_MASK = 63;
+    private static final int NO_VERSION = -1;
+
+    private final BiFunction<Node<T>, T, Node<T>> loader;
+    private final Map<T, Integer> slots;
+    private final Object[] keys;
+    private final Node<?>[] nodes;
+    private final int[] versions;
+    private final boolean[] referenced;
+    private int hand;
+    private int used;
+    // no slot holds an older version, releases below it need no scan
+    private int oldestVersion = Integer.MAX_VALUE;
+
+    private long lookupCount;
+    private long hitCount;
+    private long missCount;
+    private long sampledHitNanos;
+    private long sampledHits;
+    private long sampledMissNanos;
+    private long sampledMisses;
+
+    LookupCache(int capacity, BiFunction<Node<T>, T, Node<T>> loader) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity " + capacity + " has to be positive");
+        }
+        this.loader = loader;
+        this.slots = new HashMap<>(capacity * 2);
+        this.keys = new Object[capacity];
+        this.nodes = new Node<?>[capacity];
+        this.versions = new int[capacity];
+        this.referenced = new boolean[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    Node<T> lookup(int version, Node<T> root, T value) {
+        boolean sampled = (++lookupCount & SAMPLE_MASK) == 0;
+        long start = sampled ? System.nanoTime() : 0;
+
+        Integer slot = slots.get(value);
+        if (slot != null && versions[slot] == version) {
+            hitCount++;
+            referenced[slot] = true;
+            Node<T> node = (Node<T>) nodes[slot];
+            if (sampled) {
+                sampledHitNanos += System.nanoTime() - start;
+                sampledHits++;
+            }
+            return node;
+        }
+
+        missCount++;
+        Node<T> node = loader.apply(root, value);
+        if (slot == null) {
+            slot = evict();
+            slots.put(value, slot);
+            keys[slot] = value;
+        }
+        nodes[slot] = node;
+        versions[slot] = version;
+        referenced[slot] = false;
+        oldestVersion = Math.min(oldestVersion, version);
+        if (sampled) {
+            sampledMissNanos += System.nanoTime() - start;
+            sampledMisses++;
+        }
+        return node;
+    }
+
+    // releases usually go oldest first, so after one scan the bound passes the next ones
+    void release(int version) {
+        if (version < oldestVersion) {
+            return;
+        }
+        int oldest = Integer.MAX_VALUE;
+        for (int slot = 0; slot < used; slot++) {
+            if (versions[slot] == version) {
+                nodes[slot] = null;
+                versions[slot] = NO_VERSION;
+            } else if (versions[slot] != NO_VERSION) {
+                oldest = Math.min(oldest, versions[slot]);
+            }
+        }
+        oldestVersion = oldest;
+    }
+
+    private int evict() {
+        if (used < keys.length) {
+            return used++;
+        }
+        while (referenced[hand]) {
+            referenced[hand] = false;
+            hand = (hand + 1) % keys.length;
+        }
+        int victim = hand;
+        slots.remove(keys[victim]);
+        hand = (hand + 1) % keys.length;
+        return victim;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public int size() {
+        return used;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    public double getMeanHitNanos() {
+        return sampledHits == 0 ? Double.NaN : (double) sampledHitNanos / sampledHits;
+    }
+
+    public double getMeanMissNanos() {
+        return sampledMisses == 0 ? Double.NaN : (double) sampledMissNanos / sampledMisses;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LookupCache{capacity=%d, hits=%d, misses=%d, hitRate=%.3f, hit=%.1fns, miss=%.1fns}",
+                capacity(), hitCount, missCount, getHitRate(), getMeanHitNanos(), getMeanMissNanos());
+    }
+}
@@ -0,0 +1,219 @@
+package org.example.redblacktree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Merged in-order iteration over several versions. Every version keeps a queue of pending items,
+ * either single values or whole subtrees. A subtree that heads the queues of several versions and
+ * does not interleave with any other version is walked once for all of them; only interleaving
+ * subtrees are expanded, so the cost follows the distinct nodes rather than versions times n.
+ * Subtree bounds are cached per node, so a spine shared by several versions is walked once.
+ */
+class MultiVersionIterator<T extends Comparable<T>> implements Iterator<VersionedValue<T>> {
+    private final int[] versions;
+    private final List<Deque<Item<T>>> pending;
+    private final T from;
+    private final T to;
+    private final Deque<Node<T>> sharedCursor = new ArrayDeque<>();
+    private final Map<Node<T>, T> leftmost = new IdentityHashMap<>();
+    private final Map<Node<T>, T> rightmost = new IdentityHashMap<>();
+    private BitSet sharedVersions;
+    private VersionedValue<T> next;
+
+    MultiVersionIterator(List<Node<T>> history, int[] versions, T from, T to) {
+        this.versions = versions.clone();
+        this.pending = new ArrayList<>(versions.length);
+        this.from = from;
+        this.to = to;
+        for (int i = 0; i < versions.length; i++) {
+            Node<T> root = history.get(versions[i]);
+            Deque<Item<T>> queue = new ArrayDeque<>();
+            if (root != null) {
+                pushSubtree(queue, root, leftmost(root), rightmost(root));
+            }
+            pending.add(queue);
+        }
+        next = advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public VersionedValue<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        VersionedValue<T> result = next;
+        next = advance();
+        return result;
+    }
+
+    private VersionedValue<T> advance() {
+        while (true) {
+            if (!sharedCursor.isEmpty()) {
+                Node<T> node = sharedCursor.pop();
+                pushLeftPath(node.getChildRight());
+                return new VersionedValue<>(node.getValue(), (BitSet) sharedVersions.clone());
+            }
+
+            Item<T> head = null;
+            for (Deque<Item<T>> queue : pending) {
+                Item<T> item = queue.peek();
+                if (item != null && (head == null || item.min.compareTo(head.min) < 0)) {
+                    head = item;
+                }
+            }
+            if (head == null) {
+                return null;
+            }
+
+            if (head.single) {
+                if (expandSubtreesStartingAt(head.min)) {
+                    continue;
+                }
+                BitSet containing = new BitSet();
+                for (int i = 0; i < pending.size(); i++) {
+                    Item<T> item = pending.get(i).peek();
+                    if (item != null && item.min.compareTo(head.min) == 0) {
+                        pending.get(i).pop();
+                        containing.set(versions[i]);
+                    }
+                }
+                return new VersionedValue<>(head.min, containing);
+            }
+
+            BitSet sharing = new BitSet();
+            int interleaving = -1;
+            boolean interleaved = false;
+            for (int i = 0; i < pending.size(); i++) {
+                Item<T> item = pending.get(i).peek();
+                if (item == null) {
+                    continue;
+                }
+                if (!item.single && item.node == head.node) {
+                    sharing.set(i);
+                } else if (item.min.compareTo(head.max) <= 0) {
+                    interleaved = true;
+                    if (!item.single) {
+                        interleaving = i;
+                    }
+                }
+            }
+
+            if (!interleaved && isInRange(head)) {
+                sharedVersions = new BitSet();
+                for (int i = sharing.nextSetBit(0); i >= 0; i = sharing.nextSetBit(i + 1)) {
+                    pending.get(i).pop();
+                    sharedVersions.set(versions[i]);
+                }
+                pushLeftPath(head.node);
+            } else if (interleaving >= 0) {
+                expand(pending.get(interleaving));
+            } else {
+                for (int i = sharing.nextSetBit(0); i >= 0; i = sharing.nextSetBit(i + 1)) {
+                    expand(pending.get(i));
+                }
+            }
+        }
+    }
+
+    private boolean expandSubtreesStartingAt(T value) {
+        boolean expanded = false;
+        for (Deque<Item<T>> queue : pending) {
+            Item<T> item = queue.peek();
+            if (item != null && !item.single && item.min.compareTo(value) == 0) {
+                expand(queue);
+                expanded = true;
+            }
+        }
+        return expanded;
+    }
+
+    private void expand(Deque<Item<T>> queue) {
+        Item<T> item = queue.pop();
+        Node<T> node = item.node;
+        if (node.getChildRight() != null) {
+            pushSubtree(queue, node.getChildRight(), leftmost(node.getChildRight()), item.max);
+        }
+        if (isInRange(node.getValue(), node.getValue())) {
+            queue.push(new Item<>(node, true, node.getValue(), node.getValue()));
+        }
+        if (node.getChildLeft() != null) {
+            pushSubtree(queue, node.getChildLeft(), item.min, rightmost(node.getChildLeft()));
+        }
+    }
+
+    private void pushSubtree(Deque<Item<T>> queue, Node<T> node, T min, T max) {
+        if ((from == null || max.compareTo(from) >= 0) && (to == null || min.compareTo(to) <= 0)) {
+            queue.push(new Item<>(node, false, min, max));
+        }
+    }
+
+    private void pushLeftPath(Node<T> node) {
+        while (node != null) {
+            sharedCursor.push(node);
+            node = node.getChildLeft();
+        }
+    }
+
+    private boolean isInRange(Item<T> item) {
+        return isInRange(item.min, item.max);
+    }
+
+    private boolean isInRange(T min, T max) {
+        return (from == null || min.compareTo(from) >= 0) && (to == null || max.compareTo(to) <= 0);
+    }
+
+    private T leftmost(Node<T> node) {
+        return bound(node, leftmost, true);
+    }
+
+    private T rightmost(Node<T> node) {
+        return bound(node, rightmost, false);
+    }
+
+    // walks the spine down to the first node with a known bound and records it for every node passed
+    private T bound(Node<T> node, Map<Node<T>, T> cache, boolean left) {
+        Deque<Node<T>> spine = new ArrayDeque<>();
+        T bound = cache.get(node);
+        while (bound == null) {
+            spine.push(node);
+            Node<T> child = left ? node.getChildLeft() : node.getChildRight();
+            if (child == null) {
+                bound = node.getValue();
+            } else {
+                node = child;
+                bound = cache.get(node);
+            }
+        }
+        for (Node<T> passed : spine) {
+            cache.put(passed, bound);
+        }
+        return bound;
+    }
+
+    private static class Item<T extends Comparable<T>> {
+        private final Node<T> node;
+        private final boolean single;
+        private final T min;
+        private final T max;
+
+        private Item(Node<T> node, boolean single, T min, T max) {
+            this.node = node;
+            this.single = single;
+            this.min = min;
+            this.max = max;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.redblacktree;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Stack;
+import java.util.logging.Logger;
+
+/**
+ * Sorted multiset on top of the versioned red-black tree. Every key is stored once, in a
+ * {@link CountedNode} with its number of occurrences, so inserting a duplicate or removing one of
+ * several occurrences only copies the search path. {@link #size()} and the default iteration
+ * count distinct keys, {@link #totalCount()} and {@link #withDuplicates()} count occurrences.
+ */
+public class MultisetRedBlackTree<T extends Comparable<T>> extends RedBlackTree<T> {
+    private SnapshotCache<MultisetRedBlackTree<T>> snapshots;
+
+    private static final Logger logger = Logger.getLogger(MultisetRedBlackTree.class.getName());
+
+    public MultisetRedBlackTree() {
+    }
+
+    protected MultisetRedBlackTree(Version<T> snapshot) {
+        super(snapshot);
+    }
+
+    protected MultisetRedBlackTree(MultisetRedBlackTree<T> parentBranch, int forkVersion) {
+        super(parentBranch, forkVersion);
+    }
+
+    @Override
+    public void insert(T value) {
+        Node<T> existing = lookup(getRoot(), value);
+        if (existing == null) {
+            super.insert(value);
+            return;
+        }
+        int count = CountedNode.count(existing) + 1;
+        logger.info("insert " + value + ", now " + count + " occurrences");
+        replaceNode(withCount(existing, count), OperationLog.Operation.INSERT);
+    }
+
+    // removes a single occurrence
+    @Override
+    public void delete(T value) {
+        if (!remove(value)) {
+            throw new NoSuchElementException("tree has no element with value " + value);
+        }
+    }
+
+    @Override
+    public boolean remove(T value) {
+        Node<T> existing = lookup(getRoot(), value);
+        if (existing == null) {
+            return false;
+        }
+        if (CountedNode.count(existing) == 1) {
+            return super.remove(value);
+        }
+        int count = CountedNode.count(existing) - 1;
+        logger.info("delete " + value + ", now " + count + " occurrences");
+        replaceNode(withCount(existing, count), OperationLog.Operation.DELETE);
+        return true;
+    }
+
+    public void deleteAll(T value) {
+        super.delete(value);
+    }
+
+    @Override
+    public boolean add(T value) {
+        insert(value);
+        return true;
+    }
+
+    public int count(T value) {
+        Node<T> node = lookup(getRoot(), value);
+        return node == null ? 0 : CountedNode.count(node);
+    }
+
+    public long totalCount() {
+        return CountedNode.totalCount(getRoot());
+    }
+
+    // iterates every key as often as it occurs
+    public Iterable<T> withDuplicates() {
+        return () -> new ExpandingIterator(getRoot());
+    }
+
+    private Node<T> withCount(Node<T> node, int count) {
+        return new CountedNode<>(node.getValue(), node.getColour(), node.getChildLeft(), node.getChildRight(), count);
+    }
+
+    @Override
+    protected Node<T> newNode(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight) {
+        return new CountedNode<>(value, colour, childLeft, childRight, 1);
+    }
+
+    @Override
+    protected Node<T> newNode(Node<T> source, T value, NodeColour colour, Node<T> childLeft, Node<T> childRight) {
+        return new CountedNode<>(value, colour, childLeft, childRight, CountedNode.count(source));
+    }
+
+    @Override
+    protected MultisetRedBlackTree<T> newBranch(int version) {
+        return new MultisetRedBlackTree<>(this, version);
+    }
+
+    @Override
+    protected MultisetRedBlackTree<T> newSnapshot(Version<T> version) {
+        return new MultisetRedBlackTree<>(version);
+    }
+
+    @Override
+    SnapshotCache<? extends MultisetRedBlackTree<T>> snapshotCache() {
+        if (snapshots == null) {
+            snapshots = new SnapshotCache<>(version -> ownSnapshot(newSnapshot(getVersionInfo(version)), version));
+        }
+        return snapshots;
+    }
+
+    @Override
+    public MultisetRedBlackTree<T> branch(int version) {
+        prepareBranch(version);
+        return newBranch(version);
+    }
+
+    @Override
+    public MultisetRedBlackTree<T> branch() {
+        return branch(getHeadVersion());
+    }
+
+    @Override
+    public MultisetRedBlackTree<T> getVersion(int version) {
+        getRoot(version);
+        return snapshotCache().get(version);
+    }
+
+    @Override
+    public MultisetRedBlackTree<T> getPreviousVersion() {
+        return getVersion(getHeadVersion() - 1);
+    }
+
+    private class ExpandingIterator implements Iterator<T> {
+        private final Stack<Node<T>> cursor = new Stack<>();
+        private Node<T> current;
+        private int remaining;
+
+        ExpandingIterator(Node<T> root) {
+            pushLeft(root);
+        }
+
+        private void pushLeft(Node<T> node) {
+            while (node != null) {
+                cursor.push(node);
+                node = node.getChildLeft();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0 || !cursor.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (remaining == 0) {
+                if (cursor.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                current = cursor.pop();
+                pushLeft(current.getChildRight());
+                remaining = CountedNode.count(current);
+            }
+            remaining--;
+            return current.getValue();
+        }
+    }
+}
@@ -3,18 +3,34 @@ package org.example.redblacktree;
 import java.util.Objects;
 
 public class Node <T extends Comparable<T>> {
-    private final T value;
-    private final NodeColour colour;
-    private final Node<T> childLeft;
-    private final Node<T> childRight;
+    // not final only so that PooledNode can reinitialise its nodes in place; nodes reach other threads
+    // through the synchronized history, and every other node is never written after its constructor
+    private T value;
+    private NodeColour colour;
+    private Node<T> childLeft;
+    private Node<T> childRight;
+    private long subtreeHash;
+    private int height;
+
+    private static final long EMPTY_SUBTREE_HASH = 0x2545F4914F6CDD1DL;
 
 
     public Node(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight) {
+        this(value, colour, childLeft, childRight, 0);
+    }
+
+    // payload is hashed along with the value, for subclasses that store more than the value in a node
+    protected Node(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight, long payload) {
+        initialise(value, colour, childLeft, childRight, payload);
+    }
+
+    final void initialise(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight, long payload) {
         this.value = value;
         this.colour = colour;
         this.childLeft = childLeft;
         this.childRight = childRight;
-
+        this.subtreeHash = computeSubtreeHash(value, colour, childLeft, childRight, payload);
+        this.height = 1 + Math.max(height(childLeft), height(childRight));
     }
 
     public Node(T value) {
@@ -45,6 +61,38 @@ public class Node <T extends Comparable<T>> {
         return childRight;
     }
 
+    public long getSubtreeHash() {
+        return subtreeHash;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    static int height(Node<?> node) {
+        return node == null ? 0 : node.getHeight();
+    }
+
+    static long subtreeHash(Node<?> node) {
+        return node == null ? EMPTY_SUBTREE_HASH : node.getSubtreeHash();
+    }
+
+    // Merkle hash over value, colour and the children's hashes, so equal hashes mean (almost certainly) equal subtrees
+    static <T extends Comparable<T>> long computeSubtreeHash(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight, long payload) {
+        long hash = mix(Objects.hashCode(value) * 31L + colour.ordinal());
+        if (payload != 0) {
+            hash = mix(hash * 0x9E3779B97F4A7C15L + payload);
+        }
+        hash = mix(hash * 0x9E3779B97F4A7C15L + subtreeHash(childLeft));
+        return mix(hash * 0x9E3779B97F4A7C15L + subtreeHash(childRight));
+    }
+
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
 
     public int compareTo(Node<T> node) {
         if (node == null) {
@@ -72,19 +120,19 @@ public class Node <T extends Comparable<T>> {
 
 
     public boolean isBlack() {
-        return colour == NodeColour.BLACK;
+        return getColour() == NodeColour.BLACK;
     }
 
     public boolean isRed() {
-        return colour == NodeColour.RED;
+        return getColour() == NodeColour.RED;
     }
 
     public boolean hasEmptyLeftChild() {
-        return childLeft == null;
+        return getChildLeft() == null;
     }
 
     public boolean hasEmptyRightChild() {
-        return childRight == null;
+        return getChildRight() == null;
     }
 
     public boolean isLeaf() {
@@ -100,11 +148,11 @@ public class Node <T extends Comparable<T>> {
 
     @Override
     public String toString() {
-        String valueString = value == null ? "NIL" : value.toString();
-        StringBuilder builder = new StringBuilder(valueString).append(colour.getColourValue()).append("[");
-        deepFirstConcatTreeString(childLeft, builder);
+        String valueString = getValue() == null ? "NIL" : getValue().toString();
+        StringBuilder builder = new StringBuilder(valueString).append(getColour().getColourValue()).append("[");
+        deepFirstConcatTreeString(getChildLeft(), builder);
         builder.append(",");
-        deepFirstConcatTreeString(childRight, builder);
+        deepFirstConcatTreeString(getChildRight(), builder);
         builder.append("]");
         return builder.toString();
     }
@@ -132,11 +180,11 @@ public class Node <T extends Comparable<T>> {
 
         Node<?> node = (Node<?>) o;
 
-        return Objects.equals(value, node.value);
+        return Objects.equals(getValue(), node.getValue());
     }
 
     @Override
     public int hashCode() {
-        return value != null ? value.hashCode() : 0;
+        return getValue() != null ? getValue().hashCode() : 0;
     }
 }
\ No newline at end of file
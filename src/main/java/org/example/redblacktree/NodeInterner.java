@@ -0,0 +1,147 @@
+package org.example.redblacktree;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+
+/**
+ * Weak hash-cons table for nodes. Nodes are built bottom-up from already interned children,
+ * so comparing the children by identity is enough to find structurally equal subtrees.
+ * The table is open-addressed by subtree hash and holds nothing but a weak reference per node;
+ * candidates are compared against the referent's own fields, so an entry never keeps a node or
+ * its children reachable. References of collected nodes are swapped for a shared marker on the
+ * next intern, and the marked slots are reused by later inserts and dropped on resize.
+ */
+public class NodeInterner<T extends Comparable<T>> {
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    // stands in for a reference whose node was collected, so the reference itself can be collected too
+    private static final NodeReference<?> CLEARED = new NodeReference<>(null, 0, null);
+
+    private NodeReference<T>[] slots = newSlots(INITIAL_CAPACITY);
+    private final ReferenceQueue<Node<T>> queue = new ReferenceQueue<>();
+    // occupied slots, including the ones whose node has been collected
+    private int used;
+    private long hitCount;
+    private long missCount;
+
+    Node<T> intern(Node<T> candidate) {
+        expungeStaleEntries();
+        long hash = candidate.getSubtreeHash();
+        int mask = slots.length - 1;
+        int free = -1;
+        for (int index = fold(hash) & mask; ; index = (index + 1) & mask) {
+            NodeReference<T> slot = slots[index];
+            if (slot == null) {
+                if (free < 0) {
+                    free = index;
+                    used++;
+                }
+                break;
+            }
+            Node<T> existing = slot.get();
+            if (existing == null) {
+                slots[index] = cleared();
+                if (free < 0) {
+                    free = index;
+                }
+            } else if (existing.getSubtreeHash() == hash && sameNode(existing, candidate)) {
+                hitCount++;
+                return existing;
+            }
+        }
+        slots[free] = new NodeReference<>(candidate, fold(hash), queue);
+        missCount++;
+        if (used > slots.length - (slots.length >>> 2)) {
+            resize();
+        }
+        return candidate;
+    }
+
+    public int size() {
+        expungeStaleEntries();
+        int live = 0;
+        for (NodeReference<T> slot : slots) {
+            if (slot != null && slot.get() != null) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    private void expungeStaleEntries() {
+        int mask = slots.length - 1;
+        for (Object stale; (stale = queue.poll()) != null; ) {
+            // a resize may already have dropped the reference, the probe then ends at an empty slot
+            for (int index = ((NodeReference<?>) stale).hash & mask; slots[index] != null; index = (index + 1) & mask) {
+                if (slots[index] == stale) {
+                    slots[index] = cleared();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean sameNode(Node<?> existing, Node<?> candidate) {
+        return existing.getColour() == candidate.getColour()
+                && existing.getChildLeft() == candidate.getChildLeft()
+                && existing.getChildRight() == candidate.getChildRight()
+                && existing.getClass() == candidate.getClass()
+                && Objects.equals(existing.getValue(), candidate.getValue());
+    }
+
+    // rehashes the live nodes into a table at most 5/8 full, which may also be a smaller one
+    private void resize() {
+        NodeReference<T>[] old = slots;
+        int live = size();
+        int capacity = INITIAL_CAPACITY;
+        while (capacity - (capacity >>> 1) + (capacity >>> 3) < live) {
+            capacity <<= 1;
+        }
+        slots = newSlots(capacity);
+        used = 0;
+        int mask = capacity - 1;
+        for (NodeReference<T> slot : old) {
+            Node<T> node = slot == null ? null : slot.get();
+            if (node != null) {
+                int index = slot.hash & mask;
+                while (slots[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = slot;
+                used++;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> NodeReference<T> cleared() {
+        return (NodeReference<T>) CLEARED;
+    }
+
+    private static int fold(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> NodeReference<T>[] newSlots(int capacity) {
+        return (NodeReference<T>[]) new NodeReference<?>[capacity];
+    }
+
+    // the folded hash fits into the padding of a plain WeakReference, so it costs no extra space
+    private static class NodeReference<T extends Comparable<T>> extends WeakReference<Node<T>> {
+        private final int hash;
+
+        private NodeReference(Node<T> node, int hash, ReferenceQueue<Node<T>> queue) {
+            super(node, queue);
+            this.hash = hash;
+        }
+    }
+}
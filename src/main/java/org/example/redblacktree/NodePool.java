@@ -0,0 +1,101 @@
+package org.example.redblacktree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Opt-in node memory manager. Every node reachable from a committed version counts the committed
+ * parents and version roots referencing it; when a version is released, the nodes whose count
+ * drops to zero were exclusive to it and go into a bounded pool that later path copies draw from.
+ * Nodes of a released version must not be referenced any more, they are reused in place. Nodes
+ * handed out for an operation that are not part of the version it commits (rebalancing
+ * intermediates) are recycled at the commit as well. Only {@link PooledNode}s are counted and
+ * reused, all other nodes stay immutable. Not thread-safe.
+ */
+public class NodePool<T extends Comparable<T>> {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final Deque<PooledNode<T>> free = new ArrayDeque<>();
+    private final List<PooledNode<T>> pending = new ArrayList<>();
+    private final int capacity;
+    private long allocatedCount;
+    private long reusedCount;
+    private long reclaimedCount;
+
+    public NodePool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public NodePool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    Node<T> newNode(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight) {
+        PooledNode<T> node = free.poll();
+        if (node == null) {
+            allocatedCount++;
+            node = new PooledNode<>(value, colour, childLeft, childRight);
+        } else {
+            reusedCount++;
+            node.reset(value, colour, childLeft, childRight);
+        }
+        pending.add(node);
+        return node;
+    }
+
+    void commit(Node<T> root) {
+        retain(root);
+        for (PooledNode<T> node : pending) {
+            if (node.referenceCount == 0) {
+                reclaim(node);
+            }
+        }
+        pending.clear();
+    }
+
+    // registers a newly committed root; only nodes seen for the first time pass the reference on to their children
+    void retain(Node<T> node) {
+        if (node instanceof PooledNode && ((PooledNode<T>) node).referenceCount++ == 0) {
+            retain(node.getChildLeft());
+            retain(node.getChildRight());
+        }
+    }
+
+    void release(Node<T> node) {
+        if (!(node instanceof PooledNode)) {
+            return;
+        }
+        PooledNode<T> pooled = (PooledNode<T>) node;
+        if (--pooled.referenceCount > 0) {
+            return;
+        }
+        release(pooled.getChildLeft());
+        release(pooled.getChildRight());
+        reclaim(pooled);
+    }
+
+    private void reclaim(PooledNode<T> node) {
+        reclaimedCount++;
+        if (free.size() < capacity) {
+            free.push(node);
+        }
+    }
+
+    public int size() {
+        return free.size();
+    }
+
+    public long getAllocatedCount() {
+        return allocatedCount;
+    }
+
+    public long getReusedCount() {
+        return reusedCount;
+    }
+
+    public long getReclaimedCount() {
+        return reclaimedCount;
+    }
+}
@@ -0,0 +1,234 @@
+package org.example.redblacktree;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of tree operations next to a snapshot of the current version.
+ * Operations are buffered and made durable in groups: one fsync per {@code groupCommitSize}
+ * operations, or on {@link #commit()}. Every record carries a sequence number, so a recovery
+ * only replays the operations that are newer than the snapshot.
+ */
+public class OperationLog<T extends Comparable<T>> implements Closeable {
+    static final String LOG_FILE = "operations.log";
+    static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String SNAPSHOT_TEMP_FILE = "snapshot.tmp";
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES + 1;
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final Logger logger = Logger.getLogger(OperationLog.class.getName());
+
+    enum Operation {
+        INSERT, DELETE, UPSERT
+    }
+
+    private final RedBlackTree<T> tree;
+    private final Path directory;
+    private final KeyCodec<T> codec;
+    private final int groupCommitSize;
+    private final FileChannel channel;
+    private final CRC32 checksum = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+    private long sequenceNumber;
+    private int uncommitted;
+
+    private OperationLog(RedBlackTree<T> tree, Path directory, KeyCodec<T> codec, int groupCommitSize, FileChannel channel, long sequenceNumber) {
+        if (groupCommitSize < 1) {
+            throw new IllegalArgumentException("group commit size has to be positive, was " + groupCommitSize);
+        }
+        this.tree = tree;
+        this.directory = directory;
+        this.codec = codec;
+        this.groupCommitSize = groupCommitSize;
+        this.channel = channel;
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    public static <T extends Comparable<T>> RedBlackTree<T> recover(Path directory, KeyCodec<T> codec, int groupCommitSize) throws IOException {
+        Files.createDirectories(directory);
+        TreeSerializer<T> serializer = new TreeSerializer<>(codec);
+        RedBlackTree<T> tree = new RedBlackTree<>();
+        long snapshotSequenceNumber = 0;
+
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (FileChannel snapshotChannel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+                while (header.hasRemaining()) {
+                    if (snapshotChannel.read(header) < 0) {
+                        throw new EOFException("snapshot " + snapshot + " is truncated");
+                    }
+                }
+                snapshotSequenceNumber = header.flip().getLong();
+                tree = serializer.read(snapshotChannel);
+            }
+        }
+
+        FileChannel logChannel = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long sequenceNumber = replay(tree, logChannel, codec, snapshotSequenceNumber);
+            logger.info("recovered " + directory + " up to operation " + sequenceNumber + ", snapshot at " + snapshotSequenceNumber);
+            tree.setOperationLog(new OperationLog<>(tree, directory, codec, groupCommitSize, logChannel, sequenceNumber));
+            return tree;
+        } catch (IOException | RuntimeException e) {
+            logChannel.close();
+            throw e;
+        }
+    }
+
+    // replays the records newer than the snapshot, truncates the log after the last valid one and returns its sequence number
+    private static <T extends Comparable<T>> long replay(RedBlackTree<T> tree, FileChannel logChannel, KeyCodec<T> codec, long snapshotSequenceNumber) throws IOException {
+        long logLength = logChannel.size();
+        long sequenceNumber = snapshotSequenceNumber;
+        long validLength = 0;
+        int replayed = 0;
+        CRC32 checksum = new CRC32();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(logChannel.position(0))));
+        while (true) {
+            byte[] record;
+            try {
+                int keyLength = in.readInt();
+                // a torn tail can hold any length, it must not be trusted beyond what the file still contains
+                long remaining = logLength - validLength - RECORD_HEADER_BYTES - Integer.BYTES;
+                if (keyLength < 0 || keyLength > remaining) {
+                    logger.warning("operation log has a torn record at offset " + validLength + ", discarding the rest");
+                    break;
+                }
+                record = new byte[Long.BYTES + 1 + keyLength];
+                in.readFully(record);
+                checksum.reset();
+                checksum.update(record);
+                if ((int) checksum.getValue() != in.readInt()) {
+                    logger.warning("operation log has a corrupt record at offset " + validLength + ", discarding the rest");
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            validLength += Integer.BYTES + record.length + Integer.BYTES;
+
+            ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+            long recordSequenceNumber = recordBuffer.getLong();
+            Operation operation = Operation.values()[recordBuffer.get()];
+            if (recordSequenceNumber <= snapshotSequenceNumber) {
+                continue;
+            }
+            T value = codec.decode(recordBuffer, recordBuffer.remaining());
+            if (operation == Operation.INSERT) {
+                tree.insert(value);
+            } else if (operation == Operation.DELETE) {
+                tree.delete(value);
+            } else {
+                tree.upsert(value);
+            }
+            sequenceNumber = recordSequenceNumber;
+            replayed++;
+        }
+        logChannel.truncate(validLength);
+        logChannel.position(validLength);
+        logger.info("replayed " + replayed + " operations after snapshot " + snapshotSequenceNumber);
+        return sequenceNumber;
+    }
+
+    void append(Operation operation, T value) {
+        int keyLength = codec.encodedLength(value);
+        int recordLength = RECORD_HEADER_BYTES + keyLength + Integer.BYTES;
+        try {
+            if (buffer.remaining() < recordLength) {
+                flush();
+                if (buffer.capacity() < recordLength) {
+                    buffer = ByteBuffer.allocate(recordLength);
+                }
+            }
+            int start = buffer.position();
+            buffer.putInt(keyLength);
+            buffer.putLong(sequenceNumber + 1);
+            buffer.put((byte) operation.ordinal());
+            try {
+                codec.encode(value, buffer);
+            } catch (RuntimeException e) {
+                // nothing of the failed record may reach the file, the tree does not apply the operation either
+                buffer.position(start);
+                throw e;
+            }
+            sequenceNumber++;
+            checksum.reset();
+            checksum.update(buffer.slice(start + Integer.BYTES, Long.BYTES + 1 + keyLength));
+            buffer.putInt((int) checksum.getValue());
+
+            if (++uncommitted >= groupCommitSize) {
+                commit();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void commit() throws IOException {
+        flush();
+        if (uncommitted > 0) {
+            channel.force(false);
+            uncommitted = 0;
+        }
+    }
+
+    // snapshots the tree this log is attached to, whose head is exactly the state at the current sequence number
+    public void snapshot() throws IOException {
+        commit();
+        Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+        try (FileChannel snapshotChannel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(sequenceNumber).flip();
+            while (header.hasRemaining()) {
+                snapshotChannel.write(header);
+            }
+            new TreeSerializer<>(codec).writeSnapshot(tree, snapshotChannel);
+            snapshotChannel.force(true);
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // the rename has to be durable before the log is emptied, otherwise a power loss can keep the
+        // truncation but lose the new snapshot
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+        // records up to the snapshot's sequence number are skipped by recovery, so a crash before truncation is harmless
+        channel.truncate(0);
+        channel.force(true);
+        logger.info("snapshot at operation " + sequenceNumber + ", log truncated");
+    }
+
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            commit();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package org.example.redblacktree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Versioned sorted set with the same surface as {@link RedBlackTree}, backed by a path-copying
+ * B+ tree. Each node stores up to {@code fanout} sorted keys (leaves) or children (internal nodes),
+ * so a lookup follows log_fanout(n) references and an update copies that many arrays.
+ */
+public class PersistentBPlusTree<T extends Comparable<T>> implements VersionedTree<T, BPlusNode<T>> {
+    public static final int DEFAULT_FANOUT = 32;
+
+    private final int fanout;
+    private final List<BPlusNode<T>> history = new ArrayList<>();
+    private final List<Integer> sizes = new ArrayList<>();
+    private final SnapshotCache<PersistentBPlusTree<T>> snapshots = new SnapshotCache<>(this::newSnapshot);
+    private final boolean readOnly;
+
+    private static final Logger logger = Logger.getLogger(PersistentBPlusTree.class.getName());
+
+    public PersistentBPlusTree() {
+        this(DEFAULT_FANOUT);
+    }
+
+    public PersistentBPlusTree(int fanout) {
+        this(fanout, false);
+    }
+
+    private PersistentBPlusTree(int fanout, boolean readOnly) {
+        if (fanout < 4) {
+            throw new IllegalArgumentException("fanout has to be at least 4, was " + fanout);
+        }
+        this.fanout = fanout;
+        this.readOnly = readOnly;
+    }
+
+    @Override
+    public void insert(T value) {
+        checkWritable();
+        logger.fine("insert " + value);
+        BPlusNode<T> root = getRoot();
+        BPlusNode<T> newRoot;
+        if (root == null) {
+            newRoot = leaf(new Object[]{value});
+        } else {
+            Split<T> split = insert(root, value);
+            newRoot = split.right == null ? split.left : internal(new Object[]{split.separator}, List.of(split.left, split.right));
+        }
+        commit(newRoot, size() + 1);
+    }
+
+    @Override
+    public void delete(T value) {
+        checkWritable();
+        logger.fine("delete " + value);
+        BPlusNode<T> newRoot = delete(getRoot(), value);
+        if (newRoot.isLeaf() && newRoot.getKeyCount() == 0) {
+            newRoot = null;
+        } else if (!newRoot.isLeaf() && newRoot.getChildCount() == 1) {
+            newRoot = newRoot.children[0];
+        }
+        commit(newRoot, size() - 1);
+    }
+
+    public boolean contains(T value) {
+        BPlusNode<T> node = getRoot();
+        if (node == null) {
+            return false;
+        }
+        while (!node.isLeaf()) {
+            node = node.children[childIndex(node, value)];
+        }
+        return search(node, value) >= 0;
+    }
+
+    private void commit(BPlusNode<T> root, int size) {
+        history.add(root);
+        sizes.add(size);
+    }
+
+    private Split<T> insert(BPlusNode<T> node, T value) {
+        if (node.isLeaf()) {
+            int position = search(node, value);
+            if (position >= 0) {
+                throw new IllegalArgumentException("Node with value " + value + " already exists");
+            }
+            Object[] keys = insertAt(node.keys, -position - 1, value);
+            if (keys.length <= fanout) {
+                return new Split<>(leaf(keys), null, null);
+            }
+            int middle = keys.length / 2;
+            BPlusNode<T> right = leaf(Arrays.copyOfRange(keys, middle, keys.length));
+            return new Split<>(leaf(Arrays.copyOf(keys, middle)), right.keys[0], right);
+        }
+
+        int index = childIndex(node, value);
+        Split<T> childSplit = insert(node.children[index], value);
+        BPlusNode<T>[] children = node.children.clone();
+        children[index] = childSplit.left;
+        if (childSplit.right == null) {
+            return new Split<>(new BPlusNode<>(node.keys, children), null, null);
+        }
+        children = insertAt(children, index + 1, childSplit.right);
+        Object[] keys = insertAt(node.keys, index, childSplit.separator);
+        if (children.length <= fanout) {
+            return new Split<>(new BPlusNode<>(keys, children), null, null);
+        }
+        return splitInternal(keys, children);
+    }
+
+    private BPlusNode<T> delete(BPlusNode<T> node, T value) {
+        if (node == null) {
+            throw new NoSuchElementException("tree has no element with value " + value);
+        }
+        if (node.isLeaf()) {
+            int position = search(node, value);
+            if (position < 0) {
+                throw new NoSuchElementException("tree has no element with value " + value);
+            }
+            return leaf(removeAt(node.keys, position));
+        }
+
+        int index = childIndex(node, value);
+        BPlusNode<T> child = delete(node.children[index], value);
+        BPlusNode<T>[] children = node.children.clone();
+        children[index] = child;
+        if (child.entryCount() >= minEntries() || children.length == 1) {
+            return new BPlusNode<>(node.keys, children);
+        }
+
+        // the child is underfull: redistribute with, or merge into, a neighbour
+        int left = index > 0 ? index - 1 : index;
+        Split<T> rebalanced = rebalance(children[left], node.keys[left], children[left + 1]);
+        Object[] keys = node.keys.clone();
+        children[left] = rebalanced.left;
+        if (rebalanced.right != null) {
+            children[left + 1] = rebalanced.right;
+            keys[left] = rebalanced.separator;
+            return new BPlusNode<>(keys, children);
+        }
+        return new BPlusNode<>(removeAt(keys, left), removeAt(children, left + 1));
+    }
+
+    private Split<T> rebalance(BPlusNode<T> left, Object separator, BPlusNode<T> right) {
+        if (left.isLeaf()) {
+            Object[] keys = concat(left.keys, right.keys);
+            if (keys.length <= fanout) {
+                return new Split<>(leaf(keys), null, null);
+            }
+            int middle = keys.length / 2;
+            BPlusNode<T> newRight = leaf(Arrays.copyOfRange(keys, middle, keys.length));
+            return new Split<>(leaf(Arrays.copyOf(keys, middle)), newRight.keys[0], newRight);
+        }
+        Object[] keys = concat(insertAt(left.keys, left.keys.length, separator), right.keys);
+        BPlusNode<T>[] children = concat(left.children, right.children);
+        if (children.length <= fanout) {
+            return new Split<>(new BPlusNode<>(keys, children), null, null);
+        }
+        return splitInternal(keys, children);
+    }
+
+    private Split<T> splitInternal(Object[] keys, BPlusNode<T>[] children) {
+        int middle = children.length / 2;
+        BPlusNode<T> left = new BPlusNode<>(Arrays.copyOf(keys, middle - 1), Arrays.copyOf(children, middle));
+        BPlusNode<T> right = new BPlusNode<>(Arrays.copyOfRange(keys, middle, keys.length), Arrays.copyOfRange(children, middle, children.length));
+        return new Split<>(left, keys[middle - 1], right);
+    }
+
+    private int minEntries() {
+        return fanout / 2;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int search(BPlusNode<T> leaf, T value) {
+        int low = 0;
+        int high = leaf.keys.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = ((T) leaf.keys[middle]).compareTo(value);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // number of separators that are less than or equal to the value
+    @SuppressWarnings("unchecked")
+    private int childIndex(BPlusNode<T> node, T value) {
+        int low = 0;
+        int high = node.keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (((T) node.keys[middle]).compareTo(value) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private BPlusNode<T> leaf(Object[] keys) {
+        return new BPlusNode<>(keys, null);
+    }
+
+    // every other child array is copied from an existing one, this is the only place one is created
+    private static <T extends Comparable<T>> BPlusNode<T> internal(Object[] keys, List<BPlusNode<T>> children) {
+        @SuppressWarnings("unchecked")
+        BPlusNode<T>[] array = (BPlusNode<T>[]) new BPlusNode<?>[children.size()];
+        return new BPlusNode<>(keys, children.toArray(array));
+    }
+
+    private static <E> E[] insertAt(E[] array, int index, E element) {
+        E[] result = Arrays.copyOf(array, array.length + 1);
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        result[index] = element;
+        return result;
+    }
+
+    private static <E> E[] removeAt(E[] array, int index) {
+        E[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+
+    private static <E> E[] concat(E[] first, E[] second) {
+        E[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("version snapshots are read-only");
+        }
+    }
+
+    public int getFanout() {
+        return fanout;
+    }
+
+    @Override
+    public int size() {
+        return sizes.isEmpty() ? 0 : sizes.get(sizes.size() - 1);
+    }
+
+    public BPlusNode<T> getRoot() {
+        return history.isEmpty() ? null : history.get(history.size() - 1);
+    }
+
+    @Override
+    public List<BPlusNode<T>> getHistory() {
+        return Collections.unmodifiableList(history);
+    }
+
+    @Override
+    public PersistentBPlusTree<T> getVersion(int version) {
+        Objects.checkIndex(version, history.size());
+        return snapshots.get(version);
+    }
+
+    private PersistentBPlusTree<T> newSnapshot(int version) {
+        PersistentBPlusTree<T> snapshot = new PersistentBPlusTree<>(fanout, true);
+        snapshot.commit(history.get(version), sizes.get(version));
+        return snapshot;
+    }
+
+    @Override
+    public PersistentBPlusTree<T> getPreviousVersion() {
+        return getVersion(history.size() - 2);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new LeafIterator(getRoot());
+    }
+
+    private class LeafIterator implements Iterator<T> {
+        private final Deque<BPlusNode<T>> parents = new ArrayDeque<>();
+        private final Deque<Integer> nextChildren = new ArrayDeque<>();
+        private BPlusNode<T> leaf;
+        private int position;
+
+        private LeafIterator(BPlusNode<T> root) {
+            if (root != null) {
+                descend(root);
+            }
+        }
+
+        private void descend(BPlusNode<T> node) {
+            while (!node.isLeaf()) {
+                parents.push(node);
+                nextChildren.push(1);
+                node = node.children[0];
+            }
+            leaf = node;
+            position = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (leaf != null && position >= leaf.keys.length) {
+                leaf = null;
+                while (!parents.isEmpty() && nextChildren.peek() >= parents.peek().children.length) {
+                    parents.pop();
+                    nextChildren.pop();
+                }
+                if (!parents.isEmpty()) {
+                    int child = nextChildren.pop();
+                    nextChildren.push(child + 1);
+                    descend(parents.peek().children[child]);
+                }
+            }
+            return leaf != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return leaf.getKey(position++);
+        }
+    }
+
+    private static class Split<T extends Comparable<T>> {
+        private final BPlusNode<T> left;
+        private final Object separator;
+        private final BPlusNode<T> right;
+
+        private Split(BPlusNode<T> left, Object separator, BPlusNode<T> right) {
+            this.left = left;
+            this.separator = separator;
+            this.right = right;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getRoot() == null ? null : "PersistentBPlusTree={" + getRoot() + '}';
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.redblacktree;
+
+/**
+ * Node handed out by a {@link NodePool}. Unlike every other node it is reinitialised once the
+ * versions referencing it were released; the state is the one of {@link Node}, rewritten in place,
+ * so a pooled node only adds its reference count to the footprint of a plain node.
+ */
+final class PooledNode<T extends Comparable<T>> extends Node<T> {
+    int referenceCount;
+
+    PooledNode(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight) {
+        super(value, colour, childLeft, childRight);
+    }
+
+    void reset(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight) {
+        initialise(value, colour, childLeft, childRight, 0);
+        referenceCount = 0;
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.redblacktree;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format shared by {@link TreeQueryServer} and {@link TreeQueryClient}. A request is an
+ * operation byte followed by the pinned version ({@link #HEAD} for the current one) and the
+ * operation's arguments; keys travel as their length and their {@link KeyCodec} encoding.
+ * Every response starts with a status byte and, on success, the version it was served from.
+ * Key streams (range scans, diffs) are terminated by {@link #END_OF_KEYS}.
+ */
+final class QueryProtocol {
+    static final byte GET = 1;
+    static final byte RANGE = 2;
+    static final byte DIFF = 3;
+    static final byte VERSIONS = 4;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    static final int HEAD = -1;
+    static final int END_OF_KEYS = -1;
+    // a length read off the wire is allocated before the key arrives, so it must not be trusted beyond this
+    static final int MAX_KEY_LENGTH = 1 << 20;
+
+    private QueryProtocol() {
+    }
+
+    static <T> void writeKey(DataOutputStream out, KeyCodec<T> codec, T value) throws IOException {
+        int length = codec.encodedLength(value);
+        if (length > MAX_KEY_LENGTH) {
+            throw new IOException("key of " + length + " bytes exceeds the limit of " + MAX_KEY_LENGTH);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        codec.encode(value, buffer);
+        out.writeInt(length);
+        out.write(buffer.array(), 0, length);
+    }
+
+    static <T> T readKey(DataInputStream in, KeyCodec<T> codec, int length) throws IOException {
+        if (length < 0 || length > MAX_KEY_LENGTH) {
+            throw new IOException("invalid key length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return codec.decode(ByteBuffer.wrap(bytes), length);
+    }
+
+    static <T> T readKey(DataInputStream in, KeyCodec<T> codec) throws IOException {
+        return readKey(in, codec, in.readInt());
+    }
+}
@@ -0,0 +1,57 @@
+package org.example.redblacktree;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * In-order iteration over the values of one version that lie in [from, to]; a null bound is open.
+ * Only subtrees overlapping the range are descended into, so a scan costs O(log n + k).
+ */
+class RangeIterator<T extends Comparable<T>> implements Iterator<T> {
+    private final Deque<Node<T>> cursor = new ArrayDeque<>();
+    private final T from;
+    private final T to;
+
+    RangeIterator(Node<T> root, T from, T to) {
+        this.from = from;
+        this.to = to;
+        descend(root);
+        dropPastEnd();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !cursor.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        if (cursor.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        Node<T> node = cursor.pop();
+        descend(node.getChildRight());
+        dropPastEnd();
+        return node.getValue();
+    }
+
+    // pushes the path to the smallest value not below from, skipping left of the range
+    private void descend(Node<T> node) {
+        while (node != null) {
+            if (from != null && node.getValue().compareTo(from) < 0) {
+                node = node.getChildRight();
+            } else {
+                cursor.push(node);
+                node = node.getChildLeft();
+            }
+        }
+    }
+
+    private void dropPastEnd() {
+        if (to != null && !cursor.isEmpty() && cursor.peek().getValue().compareTo(to) > 0) {
+            cursor.clear();
+        }
+    }
+}
@@ -2,75 +2,482 @@ package org.example.redblacktree;
 
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Stack;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Logger;
 
-public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
-    private final Stack<Node<T>> history = new Stack<>();
+public class RedBlackTree<T extends Comparable<T>> implements VersionedTree<T, Node<T>> {
+    private final Stack<Version<T>> history = new Stack<>();
+    private final List<Node<T>> roots = new AbstractList<>() {
+        @Override
+        public Node<T> get(int version) {
+            return history.get(version).getRoot();
+        }
+
+        @Override
+        public int size() {
+            return history.size();
+        }
+    };
+    private SnapshotCache<RedBlackTree<T>> snapshots;
+    private final RedBlackTree<T> parentBranch;
+    private final int forkVersion;
+    private final NodeInterner<T> interner;
+    private final NodePool<T> nodePool;
+    private final boolean readOnly;
+    private int releasedCount;
+    private OperationLog<T> operationLog;
+    private LookupCache<T> lookupCache;
+    private KeyLifetimeIndex<T> lifetimeIndex;
+    // set on snapshot wrappers only, they hold a single version and are branched through the tree they came from
+    private RedBlackTree<T> snapshotOwner;
+    private int snapshotVersion;
 
     private static final Logger logger = Logger.getLogger(RedBlackTree.class.getName());
 
-    public RedBlackTree() {}
+    public RedBlackTree() {
+        this(null, -1, null, null, false);
+    }
 
     public RedBlackTree(Node<T> rootNode) {
-        history.add(rootNode);
+        this();
+        pushVersion(rootNode);
+    }
+
+    protected RedBlackTree(Version<T> snapshot) {
+        this(null, -1, null, null, true);
+        history.push(snapshot);
+    }
+
+    protected RedBlackTree(RedBlackTree<T> parentBranch, int forkVersion) {
+        this(parentBranch.forkSource(), parentBranch.forkPoint(forkVersion),
+                parentBranch.forkSource().interner, parentBranch.forkSource().nodePool, false);
+    }
+
+    private RedBlackTree(RedBlackTree<T> parentBranch, int forkVersion, NodeInterner<T> interner, NodePool<T> nodePool, boolean readOnly) {
+        this.parentBranch = parentBranch;
+        this.forkVersion = forkVersion;
+        this.interner = interner;
+        this.nodePool = nodePool;
+        this.readOnly = readOnly;
+        if (parentBranch != null) {
+            // the branch shares the roots (and therefore all nodes) of its ancestry up to the fork point
+            history.addAll(parentBranch.history.subList(0, forkVersion + 1));
+            for (Version<T> version : history) {
+                if (version.isReleased()) {
+                    releasedCount++;
+                } else if (nodePool != null) {
+                    nodePool.retain(version.getRoot());
+                }
+            }
+            // released roots cannot be indexed again, so the branch starts from the parent's index
+            if (releasedCount > 0) {
+                lifetimeIndex = parentBranch.getLifetimeIndex().truncatedTo(forkVersion);
+            }
+        }
+    }
+
+    public static <T extends Comparable<T>> RedBlackTree<T> withNodeInterning() {
+        return new RedBlackTree<>(null, -1, new NodeInterner<T>(), null, false);
+    }
+
+    // interning is not combined with pooling, an interned node could be handed out again after its reclamation
+    public static <T extends Comparable<T>> RedBlackTree<T> withNodePool(NodePool<T> nodePool) {
+        return new RedBlackTree<>(null, -1, null, Objects.requireNonNull(nodePool), false);
     }
 
 
 
     public void insert(T value) {
+        if (!insertIfAbsent(value)) {
+            throw new IllegalArgumentException("Node with value " + value + " already exists");
+        }
+    }
+
+    private boolean insertIfAbsent(T value) {
+        checkWritable();
         logger.info("insert " + value);
-        Node<T> toInsert = new Node<>(value);
+        Node<T> toInsert = createNode(value, NodeColour.RED, null, null);
 
         Node<T> newRoot;
 
         if (getRoot() == null) {
             logger.info("tree is empty, insert root");
-            newRoot = new Node<>(value, NodeColour.BLACK);
+            newRoot = createNode(value, NodeColour.BLACK, null, null);
         } else {
             if(toInsert.compareTo(getRoot()) < 0) {
-                newRoot = new Node<>(getRoot().getValue(), NodeColour.BLACK, insertNode(getRoot().getChildLeft(), toInsert), getRoot().getChildRight());
+                Node<T> childLeft = insertNode(getRoot().getChildLeft(), toInsert);
+                if (childLeft == null) {
+                    return false;
+                }
+                newRoot = copyNode(getRoot(), NodeColour.BLACK, childLeft, getRoot().getChildRight());
             } else if (toInsert.compareTo(getRoot()) > 0) {
-                newRoot = new Node<>(getRoot().getValue(), NodeColour.BLACK, getRoot().getChildLeft(), insertNode(getRoot().getChildRight(), toInsert));
+                Node<T> childRight = insertNode(getRoot().getChildRight(), toInsert);
+                if (childRight == null) {
+                    return false;
+                }
+                newRoot = copyNode(getRoot(), NodeColour.BLACK, getRoot().getChildLeft(), childRight);
             } else {
-                throw new IllegalArgumentException("Node with value " + value + " already exists");
+                return false;
             }
 
         }
         newRoot = rebalanceAfterInsert(newRoot, toInsert);
-        history.push(newRoot);
+        // write-ahead: the operation is logged before its version becomes visible
+        if (operationLog != null) {
+            operationLog.append(OperationLog.Operation.INSERT, value);
+        }
+        commit(new Version<>(newRoot, size() + 1));
+        if (lifetimeIndex != null) {
+            lifetimeIndex.inserted(value, getHeadVersion());
+        }
+        return true;
     }
 
     public void delete(T value) {
+        if (!deleteIfPresent(value)) {
+            throw new NoSuchElementException("tree has no element with value " + value);
+        }
+    }
+
+    private boolean deleteIfPresent(T value) {
+        checkWritable();
         logger.info("delete " + value);
-        history.push(deleteValue(value));
+        Node<T> root = getRoot();
+        if (root == null) {
+            return false;
+        }
+        Node<T> parent = findParent(root, value);
+        Node<T> toDelete = parent == null ? root : value.compareTo(parent.getValue()) < 0 ? parent.getChildLeft() : parent.getChildRight();
+        if (toDelete == null || value.compareTo(toDelete.getValue()) != 0) {
+            return false;
+        }
+        // the stored instance, value may only compare equal to it
+        T stored = toDelete.getValue();
+        Node<T> newRoot = deleteValue(root, parent, toDelete);
+        if (operationLog != null) {
+            operationLog.append(OperationLog.Operation.DELETE, stored);
+        }
+        commit(new Version<>(newRoot, size() - 1));
+        if (lifetimeIndex != null) {
+            lifetimeIndex.deleted(stored, getHeadVersion());
+        }
+        return true;
+    }
+
+    // the non-throwing variants below leave the history untouched when nothing changes
+
+    public boolean add(T value) {
+        return insertIfAbsent(value);
+    }
+
+    public boolean remove(T value) {
+        return deleteIfPresent(value);
     }
 
+    public boolean contains(T value) {
+        return lookupHead(value) != null;
+    }
+
+    public T get(T value) {
+        Node<T> node = lookupHead(value);
+        return node == null ? null : node.getValue();
+    }
+
+    // inserts the value or replaces the stored value comparing equal to it, returns the replaced value
+    public T upsert(T value) {
+        checkWritable();
+        Node<T> existing = lookup(getRoot(), value);
+        if (existing == null) {
+            insert(value);
+            return null;
+        }
+        T previous = existing.getValue();
+        if (!previous.equals(value)) {
+            replaceStoredValue(existing, value);
+        }
+        return previous;
+    }
+
+    // replaces the stored value only if it is currently equal to expected
+    public boolean replace(T expected, T newValue) {
+        checkWritable();
+        if (expected.compareTo(newValue) != 0) {
+            throw new IllegalArgumentException("replacement " + newValue + " does not have the key of " + expected);
+        }
+        Node<T> existing = lookup(getRoot(), expected);
+        if (existing == null || !existing.getValue().equals(expected)) {
+            return false;
+        }
+        if (!expected.equals(newValue)) {
+            replaceStoredValue(existing, newValue);
+        }
+        return true;
+    }
+
+    private void replaceStoredValue(Node<T> existing, T value) {
+        logger.info("replace " + value);
+        replaceNode(newNode(existing, value, existing.getColour(), existing.getChildLeft(), existing.getChildRight()), OperationLog.Operation.UPSERT);
+    }
+
+    // commits a copy of the search path with the node holding the key of replacement swapped for it;
+    // keys and colours stay in place, so no rebalancing is needed
+    void replaceNode(Node<T> replacement, OperationLog.Operation operation) {
+        checkWritable();
+        Node<T> newRoot = replaceNode(getRoot(), intern(replacement));
+        if (operationLog != null) {
+            operationLog.append(operation, replacement.getValue());
+        }
+        commit(new Version<>(newRoot, size()));
+    }
+
+    private Node<T> replaceNode(Node<T> current, Node<T> replacement) {
+        int comparison = replacement.getValue().compareTo(current.getValue());
+        if (comparison == 0) {
+            return replacement;
+        } else if (comparison < 0) {
+            return copyNode(current, current.getColour(), replaceNode(current.getChildLeft(), replacement), current.getChildRight());
+        } else {
+            return copyNode(current, current.getColour(), current.getChildLeft(), replaceNode(current.getChildRight(), replacement));
+        }
+    }
+
+    public OperationLog<T> getOperationLog() {
+        return operationLog;
+    }
+
+    void setOperationLog(OperationLog<T> operationLog) {
+        this.operationLog = operationLog;
+    }
+
+
+    void pushVersion(Node<T> root) {
+        int size = size();
+        for (T value : TreeComparison.symmetricDifference(getRoot(), root)) {
+            size += lookup(root, value) != null ? 1 : -1;
+        }
+        pushVersion(root, size);
+    }
+
+    private void pushVersion(Node<T> root, int size) {
+        commit(new Version<>(root, size));
+        if (lifetimeIndex != null) {
+            indexVersion(lifetimeIndex, getHeadVersion());
+        }
+    }
+
+    private void commit(Version<T> version) {
+        history.push(version);
+        if (nodePool != null) {
+            nodePool.commit(version.getRoot());
+        }
+    }
+
+    public void releaseVersion(int version) {
+        checkWritable();
+        Objects.checkIndex(version, history.size());
+        if (version == getHeadVersion()) {
+            throw new IllegalArgumentException("the head version cannot be released");
+        }
+        Version<T> released = history.get(version);
+        if (released.isReleased()) {
+            return;
+        }
+        logger.info("release version " + version);
+        // lifetimes are derived from the roots, so they have to be indexed while all of them are still there;
+        // the index only keeps the lifetimes that reach into a retained version
+        getLifetimeIndex().released(version);
+        history.set(version, released.release());
+        releasedCount++;
+        snapshotCache().evict(version);
+        if (lookupCache != null) {
+            lookupCache.release(version);
+        }
+        if (nodePool != null) {
+            nodePool.release(released.getRoot());
+        }
+    }
+
+    public void releaseVersionsBefore(int version) {
+        for (int i = 0; i < version; i++) {
+            releaseVersion(i);
+        }
+    }
+
+    public static <T extends Comparable<T>> RedBlackTree<T> buildFrom(Collection<T> values) {
+        logger.info("build from " + values.size() + " values");
+        RedBlackTree<T> tree = new RedBlackTree<>();
+        Object[] sorted = values.toArray();
+        Arrays.parallelSort(sorted, (first, second) -> tree.compare(first, second));
+
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || tree.compare(sorted[size - 1], sorted[i]) != 0) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        // a split in the middle fills every level but the deepest one, which is coloured red unless it is the root
+        int redDepth = size > 1 ? 31 - Integer.numberOfLeadingZeros(size) : -1;
+        tree.pushVersion(new BuildTask<>(tree, sorted, 0, size, 0, redDepth).invoke(), size);
+        return tree;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object first, Object second) {
+        return ((T) first).compareTo((T) second);
+    }
+
+    private static class BuildTask<T extends Comparable<T>> extends RecursiveTask<Node<T>> {
+        // ForkJoinTask is Serializable, build tasks are never serialized though
+        private static final long serialVersionUID = 1L;
+        private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+        private final RedBlackTree<T> tree;
+        private final Object[] sorted;
+        private final int from;
+        private final int to;
+        private final int depth;
+        private final int redDepth;
+
+        private BuildTask(RedBlackTree<T> tree, Object[] sorted, int from, int to, int depth, int redDepth) {
+            this.tree = tree;
+            this.sorted = sorted;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+            this.redDepth = redDepth;
+        }
+
+        @Override
+        protected Node<T> compute() {
+            return to - from <= SEQUENTIAL_THRESHOLD ? build(from, to, depth) : split();
+        }
+
+        private Node<T> split() {
+            int middle = (from + to) >>> 1;
+            BuildTask<T> left = new BuildTask<>(tree, sorted, from, middle, depth + 1, redDepth);
+            left.fork();
+            Node<T> right = new BuildTask<>(tree, sorted, middle + 1, to, depth + 1, redDepth).compute();
+            return node(middle, left.join(), right, depth);
+        }
+
+        private Node<T> build(int from, int to, int depth) {
+            if (from >= to) {
+                return null;
+            }
+            int middle = (from + to) >>> 1;
+            return node(middle, build(from, middle, depth + 1), build(middle + 1, to, depth + 1), depth);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node<T> node(int index, Node<T> childLeft, Node<T> childRight, int depth) {
+            NodeColour colour = depth == redDepth ? NodeColour.RED : NodeColour.BLACK;
+            return tree.newNode((T) sorted[index], colour, childLeft, childRight);
+        }
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("version snapshots are read-only, branch them to write");
+        }
+    }
+
+    public int size() {
+        return history.isEmpty() ? 0 : history.peek().getSize();
+    }
 
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public T first() {
+        if (history.isEmpty()) {
+            throw new NoSuchElementException("tree is empty");
+        }
+        return history.peek().getMin();
+    }
+
+    public T last() {
+        if (history.isEmpty()) {
+            throw new NoSuchElementException("tree is empty");
+        }
+        return history.peek().getMax();
+    }
+
+    public int height() {
+        return Node.height(getRoot());
+    }
+
+    public Version<T> getVersionInfo(int version) {
+        return history.get(version);
+    }
+
+    public List<KeyLifetime> getLifetimes(T value) {
+        return getLifetimeIndex().getLifetimes(value);
+    }
+
+    public boolean containsAt(T value, int version) {
+        // rejects released versions, their lifetimes may already have been dropped from the index
+        getRoot(version);
+        return getLifetimeIndex().containsAt(value, version);
+    }
+
+    // built on first use from the history, so branches, snapshots and read trees are covered as well
+    KeyLifetimeIndex<T> getLifetimeIndex() {
+        if (lifetimeIndex == null) {
+            // only cached once complete, a failure half way must not leave a partial index behind
+            KeyLifetimeIndex<T> index = new KeyLifetimeIndex<>();
+            for (int version = 0; version < history.size(); version++) {
+                indexVersion(index, version);
+            }
+            lifetimeIndex = index;
+        }
+        return lifetimeIndex;
+    }
+
+    private void indexVersion(KeyLifetimeIndex<T> index, int version) {
+        Node<T> previousRoot = version == 0 ? null : roots.get(version - 1);
+        Node<T> root = roots.get(version);
+        for (T value : TreeComparison.symmetricDifference(previousRoot, root)) {
+            if (lookup(root, value) != null) {
+                index.inserted(value, version);
+            } else {
+                index.deleted(value, version);
+            }
+        }
+    }
+
+    // returns null if the value is already in the tree
     private Node<T> insertNode(Node<T> current, Node<T> toInsert) {
         if(current == null) {
             return toInsert;
         } else if (toInsert.compareTo(current) < 0) {
-            return new Node<>(current.getValue(), current.getColour(), insertNode(current.getChildLeft(), toInsert), current.getChildRight());
+            Node<T> childLeft = insertNode(current.getChildLeft(), toInsert);
+            return childLeft == null ? null : copyNode(current, current.getColour(), childLeft, current.getChildRight());
         } else if (toInsert.compareTo(current) > 0) {
-            return new Node<>(current.getValue(), current.getColour(), current.getChildLeft(), insertNode(current.getChildRight(), toInsert));
+            Node<T> childRight = insertNode(current.getChildRight(), toInsert);
+            return childRight == null ? null : copyNode(current, current.getColour(), current.getChildLeft(), childRight);
         } else {
-            throw new IllegalArgumentException("Node with value " + toInsert.getValue() + " already exists");
+            return null;
         }
     }
 
     private Node<T> reInsertNode(Node<T> current, T oldNodeValue, Node<T> toInsert) {
-        if(current.getValue().equals(oldNodeValue)) {
+        if(current.getValue().compareTo(oldNodeValue) == 0) {
             return toInsert;
         } else if (oldNodeValue.compareTo(current.getValue()) < 0) {
-            return new Node<>(current.getValue(), current.getColour(), reInsertNode(current.getChildLeft(), oldNodeValue, toInsert), current.getChildRight());
+            return copyNode(current, current.getColour(), reInsertNode(current.getChildLeft(), oldNodeValue, toInsert), current.getChildRight());
         } else {
-            return new Node<>(current.getValue(), current.getColour(), current.getChildLeft(), reInsertNode(current.getChildRight(), oldNodeValue, toInsert));
+            return copyNode(current, current.getColour(), current.getChildLeft(), reInsertNode(current.getChildRight(), oldNodeValue, toInsert));
         }
     }
 
@@ -81,7 +488,7 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
         }
 
         if(node.equals(root)) {
-            return new Node<>(node.getValue(), NodeColour.BLACK, node.getChildLeft(), node.getChildRight());
+            return copyNode(node, NodeColour.BLACK, node.getChildLeft(), node.getChildRight());
         }
 
         Node<T> parent = findParent(root, node.getValue());
@@ -97,50 +504,50 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
         if(uncle != null && uncle.isRed()) {
             Node<T> newGrandparent;
             if(parent.equals(grandparent.getChildLeft())) {
-                newGrandparent = new Node<>(grandparent.getValue(), grandparent.getColour(), parent.recolour(), uncle.recolour()).recolour();
+                newGrandparent = copyNode(grandparent, grandparent.getColour().switchColour(), recolour(parent), recolour(uncle));
             } else {
-                newGrandparent = new Node<>(grandparent.getValue(), grandparent.getColour(), uncle.recolour(), parent.recolour()).recolour();
+                newGrandparent = copyNode(grandparent, grandparent.getColour().switchColour(), recolour(uncle), recolour(parent));
             }
             if(newGrandparent.equals(root)) {
                 root = rebalanceAfterInsert(root, newGrandparent);
             } else {
-                Node<T> newRoot = new Node<>(root.getValue(), root.getColour(), root.getChildLeft(), root.getChildRight());
+                Node<T> newRoot = copyNode(root, root.getColour(), root.getChildLeft(), root.getChildRight());
                 root = reInsertNode(newRoot, grandparentOld.getValue(), newGrandparent);
                 root = rebalanceAfterInsert(root, findNode(root, newGrandparent.getValue()));
             }
             
         } else if(parent.equals(grandparent.getChildLeft())) {
             if (node.equals(parent.getChildRight())) {
-                parent = rotateLeft(parent).recolour();
-                grandparent = new Node<>(grandparent.getValue(), grandparent.getColour(), parent, grandparent.getChildRight());
+                parent = recolour(rotateLeft(parent));
+                grandparent = copyNode(grandparent, grandparent.getColour(), parent, grandparent.getChildRight());
 
             } else {
-                parent = parent.recolour();
+                parent = recolour(parent);
             }
-            grandparent = new Node<>(grandparent.getValue(), grandparent.getColour().switchColour(), parent, grandparent.getChildRight());
+            grandparent = copyNode(grandparent, grandparent.getColour().switchColour(), parent, grandparent.getChildRight());
             grandparent = rotateRight(grandparent);
 
             if(grandparentOld.equals(root)) {
                 return grandparent;
             }
-            Node<T> newRoot = new Node<>(root.getValue(), root.getColour(), root.getChildLeft(), root.getChildRight());
+            Node<T> newRoot = copyNode(root, root.getColour(), root.getChildLeft(), root.getChildRight());
             root = reInsertNode(newRoot, grandparentOld.getValue(), grandparent);
             root = rebalanceAfterInsert(root, findNode(root, grandparentOld.getValue()));
         } else {
             if (node.equals(parent.getChildLeft())) {
-                parent = rotateRight(parent).recolour();
-                grandparent = new Node<>(grandparent.getValue(), grandparent.getColour(), grandparent.getChildLeft(), parent);
+                parent = recolour(rotateRight(parent));
+                grandparent = copyNode(grandparent, grandparent.getColour(), grandparent.getChildLeft(), parent);
 
             } else {
-                parent = parent.recolour();
+                parent = recolour(parent);
             }
-            grandparent = new Node<>(grandparent.getValue(), grandparent.getColour().switchColour(),  grandparent.getChildLeft(), parent);
+            grandparent = copyNode(grandparent, grandparent.getColour().switchColour(),  grandparent.getChildLeft(), parent);
             grandparent = rotateLeft(grandparent);
 
             if(grandparentOld.equals(root)) {
                 return grandparent;
             }
-            Node<T> newRoot = new Node<>(root.getValue(), root.getColour(), root.getChildLeft(), root.getChildRight());
+            Node<T> newRoot = copyNode(root, root.getColour(), root.getChildLeft(), root.getChildRight());
             root = reInsertNode(newRoot, grandparentOld.getValue(), grandparent);
             root = rebalanceAfterInsert(root, findNode(root, grandparent.getValue()));
         }
@@ -149,12 +556,7 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
     }
 
 
-    private Node<T> deleteValue(T value) {
-
-        Node<T> root = getRoot();
-        Node<T> parent = findParent(root, value);
-
-        Node<T> toDelete = findNode(parent, value);
+    private Node<T> deleteValue(Node<T> root, Node<T> parent, Node<T> toDelete) {
 
         if(toDelete == root && toDelete.isLeaf()) {
             return null;
@@ -184,7 +586,7 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
 
             youngestRightNodeParent = updateParentsChildren(youngestRightNodeParent, movedUpNode, youngestRightNodeParent.getChildLeft() == youngestRightNode);
             toDelete = reInsertNode(toDelete, youngestRightNodeParent.getValue(), youngestRightNodeParent);
-            toDelete = new Node<>(youngestRightNode.getValue(), toDelete.getColour(), toDelete.getChildLeft(), toDelete.getChildRight());
+            toDelete = copyNode(youngestRightNode, toDelete.getColour(), toDelete.getChildLeft(), toDelete.getChildRight());
             movedUpNodeParent = toDelete;
             if(parent == null) {
                 root = toDelete;
@@ -226,9 +628,9 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
         boolean isNodeLeftChild = parent.getChildLeft() == node;
         Node<T> sibling = node.getSibling(parent);
         if(sibling.isRed()) {
-            sibling = sibling.recolour();
+            sibling = recolour(sibling);
             if(isNodeLeftChild) {
-                parent = new Node<>(parent.getValue(), NodeColour.RED, node, sibling);
+                parent = copyNode(parent, NodeColour.RED, node, sibling);
                 if(parent.equals(root)) {
                     root = rotateLeft(parent);
                 } else {
@@ -236,7 +638,7 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
                     root = reInsertNode(root, parentValue, parent);
                 }
             } else {
-                parent = new Node<>(parent.getValue(), NodeColour.RED, sibling, node);
+                parent = copyNode(parent, NodeColour.RED, sibling, node);
                 if(parent.equals(root)) {
                     root = rotateRight(parent);
                 } else {
@@ -252,11 +654,11 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
         if ((sibling.getChildLeft() == null || sibling.getChildLeft().isBlack()) &&
                 (sibling.getChildRight() == null || sibling.getChildRight().isBlack())) {
 
-            sibling = sibling.recolour(NodeColour.RED);
+            sibling = recolour(sibling, NodeColour.RED);
             parent = updateParentsChildren(parent, sibling, !isNodeLeftChild);
 
             if (parent.isRed()) {
-                parent = parent.recolour();
+                parent = recolour(parent);
                 return reInsertNode(root, parent.getValue(), parent);
             } else {
                 Node<T> grandparent = findParent(root, parent.getValue());
@@ -273,26 +675,26 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
         boolean nodeIsLeftChild = parent.getChildLeft().equals(node);
 
         if (nodeIsLeftChild && (sibling.getChildRight() == null || sibling.getChildRight().isBlack())) {
-            Node<T> siblingChildLeft = sibling.getChildLeft().recolour(NodeColour.BLACK);
-            sibling = new Node<>(sibling.getValue(), sibling.getColour().switchColour(), siblingChildLeft, sibling.getChildRight());
+            Node<T> siblingChildLeft = recolour(sibling.getChildLeft(), NodeColour.BLACK);
+            sibling = copyNode(sibling, sibling.getColour().switchColour(), siblingChildLeft, sibling.getChildRight());
             sibling = rotateRight(sibling);
-            parent = new Node<>(parent.getValue(), parent.getColour(), parent.getChildLeft(), sibling);
+            parent = copyNode(parent, parent.getColour(), parent.getChildLeft(), sibling);
         } else if (!nodeIsLeftChild && (sibling.getChildLeft() == null || sibling.getChildLeft().isBlack())) {
-            Node<T> siblingChildRight = sibling.getChildRight().recolour(NodeColour.BLACK);
-            sibling = new Node<>(sibling.getValue(), sibling.getColour().switchColour(), sibling.getChildLeft(), siblingChildRight);
+            Node<T> siblingChildRight = recolour(sibling.getChildRight(), NodeColour.BLACK);
+            sibling = copyNode(sibling, sibling.getColour().switchColour(), sibling.getChildLeft(), siblingChildRight);
             sibling = rotateLeft(sibling);
-            parent = new Node<>(parent.getValue(), parent.getColour(), sibling, parent.getChildRight());
+            parent = copyNode(parent, parent.getColour(), sibling, parent.getChildRight());
         }
 
         if (nodeIsLeftChild) {
-            Node<T> siblingChildRight = sibling.getChildRight().recolour(NodeColour.BLACK);
-            sibling = new Node<>(sibling.getValue(), parent.getColour(), sibling.getChildLeft(), siblingChildRight);
-            parent = new Node<>(parent.getValue(), NodeColour.BLACK, parent.getChildLeft(), sibling);
+            Node<T> siblingChildRight = recolour(sibling.getChildRight(), NodeColour.BLACK);
+            sibling = copyNode(sibling, parent.getColour(), sibling.getChildLeft(), siblingChildRight);
+            parent = copyNode(parent, NodeColour.BLACK, parent.getChildLeft(), sibling);
             parent = rotateLeft(parent);
         } else {
-            Node<T> siblingChildLeft = sibling.getChildLeft().recolour(NodeColour.BLACK);
-            sibling = new Node<>(sibling.getValue(), parent.getColour(), siblingChildLeft, sibling.getChildRight());
-            parent = new Node<>(parent.getValue(), NodeColour.BLACK, sibling, parent.getChildRight());
+            Node<T> siblingChildLeft = recolour(sibling.getChildLeft(), NodeColour.BLACK);
+            sibling = copyNode(sibling, parent.getColour(), siblingChildLeft, sibling.getChildRight());
+            parent = copyNode(parent, NodeColour.BLACK, sibling, parent.getChildRight());
             parent = rotateRight(parent);
         }
         return parent;
@@ -316,32 +718,169 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
         }
     }
 
+    protected Node<T> newNode(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight) {
+        return nodePool == null ? new Node<>(value, colour, childLeft, childRight) : nodePool.newNode(value, colour, childLeft, childRight);
+    }
+
+    // creates the node that takes over the position of source, for subclasses whose nodes carry more than the value
+    protected Node<T> newNode(Node<T> source, T value, NodeColour colour, Node<T> childLeft, Node<T> childRight) {
+        return newNode(value, colour, childLeft, childRight);
+    }
+
+    private Node<T> createNode(T value, NodeColour colour, Node<T> childLeft, Node<T> childRight) {
+        return intern(newNode(value, colour, childLeft, childRight));
+    }
+
+    private Node<T> copyNode(Node<T> source, NodeColour colour, Node<T> childLeft, Node<T> childRight) {
+        return intern(newNode(source, source.getValue(), colour, childLeft, childRight));
+    }
+
+    private Node<T> intern(Node<T> node) {
+        return interner == null ? node : interner.intern(node);
+    }
+
+    private Node<T> recolour(Node<T> node) {
+        return recolour(node, node.getColour().switchColour());
+    }
+
+    private Node<T> recolour(Node<T> node, NodeColour newColour) {
+        return copyNode(node, newColour, node.getChildLeft(), node.getChildRight());
+    }
+
     private Node<T> updateParentsChildren(Node<T> parent, Node<T> newChild, boolean updateLeft) {
         return updateLeft ?
-                new Node<>(parent.getValue(), parent.getColour(), newChild, parent.getChildRight()) :
-                new Node<>(parent.getValue(), parent.getColour(), parent.getChildLeft(), newChild);
+                copyNode(parent, parent.getColour(), newChild, parent.getChildRight()) :
+                copyNode(parent, parent.getColour(), parent.getChildLeft(), newChild);
     }
 
     private Node<T> rotateRight(Node<T> node) {
         Node<T> leftChild = node.getChildLeft();
-        Node<T> newNode = new Node<>(node.getValue(), node.getColour(), leftChild.getChildRight(), node.getChildRight());
-        return new Node<>(leftChild.getValue(), leftChild.getColour(), leftChild.getChildLeft(), newNode);
+        Node<T> newNode = copyNode(node, node.getColour(), leftChild.getChildRight(), node.getChildRight());
+        return copyNode(leftChild, leftChild.getColour(), leftChild.getChildLeft(), newNode);
     }
 
 
     public Node<T> rotateLeft(Node<T> node){
         Node<T> childRight = node.getChildRight();
-        Node<T> newNode = new Node<>(node.getValue(), node.getColour(), node.getChildLeft(), childRight.getChildLeft());
-        return new Node<>(childRight.getValue(), childRight.getColour(), newNode, childRight.getChildRight());
+        Node<T> newNode = copyNode(node, node.getColour(), node.getChildLeft(), childRight.getChildLeft());
+        return copyNode(childRight, childRight.getColour(), newNode, childRight.getChildRight());
     }
     
     
+    // the roots of all versions that were not released, oldest first
     public List<Node<T>> getHistory() {
-        return Collections.unmodifiableList(history);
+        if (releasedCount == 0) {
+            return Collections.unmodifiableList(roots);
+        }
+        List<Node<T>> retained = new ArrayList<>(history.size() - releasedCount);
+        for (Version<T> version : history) {
+            if (!version.isReleased()) {
+                retained.add(version.getRoot());
+            }
+        }
+        return Collections.unmodifiableList(retained);
+    }
+
+    Node<T> getRoot(int version) {
+        Objects.checkIndex(version, history.size());
+        Version<T> info = history.get(version);
+        if (info.isReleased()) {
+            throw new IllegalArgumentException("version " + version + " was released");
+        }
+        return info.getRoot();
     }
 
     public RedBlackTree<T> getVersion(int version) {
-        return new RedBlackTree<>(history.get(version));
+        getRoot(version);
+        return snapshotCache().get(version);
+    }
+
+    // subclasses narrowing getVersion keep their own cache, so only the most derived one is ever created
+    SnapshotCache<? extends RedBlackTree<T>> snapshotCache() {
+        if (snapshots == null) {
+            snapshots = new SnapshotCache<>(version -> ownSnapshot(newSnapshot(getVersionInfo(version)), version));
+        }
+        return snapshots;
+    }
+
+    final <R extends RedBlackTree<T>> R ownSnapshot(R snapshot, int version) {
+        RedBlackTree<T> owned = snapshot;
+        owned.snapshotOwner = this;
+        owned.snapshotVersion = version;
+        return snapshot;
+    }
+
+    private RedBlackTree<T> forkSource() {
+        return snapshotOwner == null ? this : snapshotOwner;
+    }
+
+    private int forkPoint(int version) {
+        return snapshotOwner == null ? version : snapshotVersion;
+    }
+
+    protected RedBlackTree<T> newSnapshot(Version<T> version) {
+        return new RedBlackTree<>(version);
+    }
+
+    public RedBlackTree<T> branch(int version) {
+        prepareBranch(version);
+        return newBranch(version);
+    }
+
+    // checks the fork point, called by every branch(int) before its newBranch hook
+    protected final void prepareBranch(int version) {
+        getRoot(version);
+        // the owner may have released the version since the wrapper was handed out
+        forkSource().getRoot(forkPoint(version));
+        logger.info("branch from version " + forkPoint(version));
+    }
+
+    protected RedBlackTree<T> newBranch(int version) {
+        return new RedBlackTree<>(this, version);
+    }
+
+    public RedBlackTree<T> branch() {
+        return branch(history.size() - 1);
+    }
+
+    public NodeInterner<T> getInterner() {
+        return interner;
+    }
+
+    public NodePool<T> getNodePool() {
+        return nodePool;
+    }
+
+    public RedBlackTree<T> getParentBranch() {
+        return parentBranch;
+    }
+
+    public int getForkVersion() {
+        return forkVersion;
+    }
+
+    public int getHeadVersion() {
+        return history.size() - 1;
+    }
+
+    public long getVersionHash(int version) {
+        return Node.subtreeHash(getRoot(version));
+    }
+
+    public boolean versionsEqual(int version, int otherVersion) {
+        return TreeComparison.structurallyEqual(getRoot(version), getRoot(otherVersion));
+    }
+
+    public boolean structurallyEquals(RedBlackTree<T> other) {
+        return TreeComparison.structurallyEqual(getRoot(), other.getRoot());
+    }
+
+    public boolean verifiedStructurallyEquals(RedBlackTree<T> other) {
+        return TreeComparison.verifiedStructurallyEqual(getRoot(), other.getRoot());
+    }
+
+    public List<T> diff(RedBlackTree<T> other) {
+        return TreeComparison.symmetricDifference(getRoot(), other.getRoot());
     }
 
     public RedBlackTree<T> getPreviousVersion(){
@@ -352,11 +891,38 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
         if (history.isEmpty()) {
             return null;
         }
-        return history.get(history.size() - 1);
+        return history.peek().getRoot();
     }
 
     public Node<T> findNode(T value) {
-        return findNode(getRoot(), value);
+        if (lookupCache == null || getRoot() == null) {
+            return findNode(getRoot(), value);
+        }
+        Node<T> node = lookupCache.lookup(getHeadVersion(), getRoot(), value);
+        if (node == null) {
+            throw new NoSuchElementException("tree has no element with value " + value);
+        }
+        return node;
+    }
+
+    private Node<T> lookupHead(T value) {
+        if (lookupCache == null || getRoot() == null) {
+            return lookup(getRoot(), value);
+        }
+        return lookupCache.lookup(getHeadVersion(), getRoot(), value);
+    }
+
+    // point lookups on the head (findNode, get, contains) go through the cache while it is enabled
+    public void enableLookupCache(int capacity) {
+        lookupCache = new LookupCache<>(capacity, this::lookup);
+    }
+
+    public void disableLookupCache() {
+        lookupCache = null;
+    }
+
+    public LookupCache<T> getLookupCache() {
+        return lookupCache;
     }
 
     private Node<T> findNode(Node<T> current, T value) {
@@ -380,13 +946,24 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
     }
     
 
+    protected Node<T> lookup(Node<T> current, T value) {
+        while (current != null) {
+            int comparison = value.compareTo(current.getValue());
+            if (comparison == 0) {
+                return current;
+            }
+            current = comparison < 0 ? current.getChildLeft() : current.getChildRight();
+        }
+        return null;
+    }
+
     private Node<T> findParent(Node<T> currentNode, T value) {
-        if(value.equals(currentNode.getValue())){
+        if(value.compareTo(currentNode.getValue()) == 0){
             return null;
         }
-        if (currentNode.getValue().compareTo(value) < 0 && currentNode.getChildRight() != null && currentNode.getChildRight().getValue() != value) {
+        if (currentNode.getValue().compareTo(value) < 0 && currentNode.getChildRight() != null && currentNode.getChildRight().getValue().compareTo(value) != 0) {
             return findParent(currentNode.getChildRight(), value);
-        } else if (currentNode.getValue().compareTo(value) > 0 && currentNode.getChildLeft() != null && currentNode.getChildLeft().getValue() != value) {
+        } else if (currentNode.getValue().compareTo(value) > 0 && currentNode.getChildLeft() != null && currentNode.getChildLeft().getValue().compareTo(value) != 0) {
             return findParent(currentNode.getChildLeft(), value);
         }
         return currentNode;
@@ -397,6 +974,21 @@ public class RedBlackTree<T extends Comparable<T>> implements Iterable<T> {
         return new TreeIterator(getRoot());
     }
 
+    public Iterator<T> iterateRange(T from, T to) {
+        return new RangeIterator<>(getRoot(), from, to);
+    }
+
+    public Iterator<VersionedValue<T>> iterateVersions(int... versions) {
+        return iterateVersionsInRange(null, null, versions);
+    }
+
+    public Iterator<VersionedValue<T>> iterateVersionsInRange(T from, T to, int... versions) {
+        for (int version : versions) {
+            getRoot(version);
+        }
+        return new MultiVersionIterator<>(roots, versions, from, to);
+    }
+
     private class TreeIterator implements Iterator<T> {
         private Node<T> next;
         private final Stack<Node<T>> cursor = new Stack<>();
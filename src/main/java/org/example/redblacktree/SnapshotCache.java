@@ -0,0 +1,55 @@
+package org.example.redblacktree;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Read-only version wrappers by version number, created on first request. Wrappers are only softly
+ * held: repeated requests for a version get the same object, but the cache never keeps wrappers
+ * of a long history alive under memory pressure; a cleared one is simply created again. The
+ * references sit in an array indexed by version, so a cached lookup allocates nothing. Typed by
+ * the tree class that owns it, so {@code getVersion} overrides hand out their own type without casting.
+ */
+final class SnapshotCache<R> {
+    private final IntFunction<R> factory;
+    private SoftReference<R>[] snapshots = newSlots(16);
+
+    SnapshotCache(IntFunction<R> factory) {
+        this.factory = factory;
+    }
+
+    R get(int version) {
+        if (version >= snapshots.length) {
+            snapshots = Arrays.copyOf(snapshots, Math.max(version + 1, snapshots.length * 2));
+        }
+        SoftReference<R> reference = snapshots[version];
+        R snapshot = reference == null ? null : reference.get();
+        if (snapshot == null) {
+            snapshot = factory.apply(version);
+            snapshots[version] = new SoftReference<>(snapshot);
+        }
+        return snapshot;
+    }
+
+    void evict(int version) {
+        if (version < snapshots.length) {
+            snapshots[version] = null;
+        }
+    }
+
+    int size() {
+        int live = 0;
+        for (SoftReference<R> reference : snapshots) {
+            if (reference != null && reference.get() != null) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> SoftReference<R>[] newSlots(int capacity) {
+        return (SoftReference<R>[]) new SoftReference<?>[capacity];
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.redblacktree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Comparisons of versions based on the cached subtree hashes: subtrees with equal hashes are
+ * skipped, so only the diverging paths of two versions are visited.
+ */
+final class TreeComparison {
+
+    private TreeComparison() {}
+
+    // O(1): equal Merkle hashes are taken as equal trees, a collision needs 2^64 bad luck
+    static <T extends Comparable<T>> boolean structurallyEqual(Node<T> first, Node<T> second) {
+        return first == second || Node.subtreeHash(first) == Node.subtreeHash(second);
+    }
+
+    // compares node by node below every pair of equal hashes, for callers that cannot accept a hash collision
+    static <T extends Comparable<T>> boolean verifiedStructurallyEqual(Node<T> first, Node<T> second) {
+        if (first == second) {
+            return true;
+        }
+        if (first == null || second == null || first.getSubtreeHash() != second.getSubtreeHash()) {
+            return false;
+        }
+        return first.getColour() == second.getColour()
+                && Objects.equals(first.getValue(), second.getValue())
+                && verifiedStructurallyEqual(first.getChildLeft(), second.getChildLeft())
+                && verifiedStructurallyEqual(first.getChildRight(), second.getChildRight());
+    }
+
+    static <T extends Comparable<T>> List<T> symmetricDifference(Node<T> first, Node<T> second) {
+        List<T> firstValues = new ArrayList<>();
+        List<T> secondValues = new ArrayList<>();
+        collectDiverging(first, second, firstValues, secondValues);
+        Collections.sort(firstValues);
+        Collections.sort(secondValues);
+
+        List<T> difference = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < firstValues.size() && j < secondValues.size()) {
+            int comparison = firstValues.get(i).compareTo(secondValues.get(j));
+            if (comparison < 0) {
+                difference.add(firstValues.get(i++));
+            } else if (comparison > 0) {
+                difference.add(secondValues.get(j++));
+            } else {
+                i++;
+                j++;
+            }
+        }
+        difference.addAll(firstValues.subList(i, firstValues.size()));
+        difference.addAll(secondValues.subList(j, secondValues.size()));
+        Collections.sort(difference);
+        return difference;
+    }
+
+    // walks both trees position by position and collects every value that is not inside a pair of equal subtrees
+    private static <T extends Comparable<T>> void collectDiverging(Node<T> first, Node<T> second, List<T> firstValues, List<T> secondValues) {
+        if (Node.subtreeHash(first) == Node.subtreeHash(second)) {
+            return;
+        }
+        if (first == null) {
+            collectAll(second, secondValues);
+            return;
+        }
+        if (second == null) {
+            collectAll(first, firstValues);
+            return;
+        }
+        firstValues.add(first.getValue());
+        secondValues.add(second.getValue());
+        collectDiverging(first.getChildLeft(), second.getChildLeft(), firstValues, secondValues);
+        collectDiverging(first.getChildRight(), second.getChildRight(), firstValues, secondValues);
+    }
+
+    private static <T extends Comparable<T>> void collectAll(Node<T> node, List<T> values) {
+        if (node == null) {
+            return;
+        }
+        collectAll(node.getChildLeft(), values);
+        values.add(node.getValue());
+        collectAll(node.getChildRight(), values);
+    }
+}
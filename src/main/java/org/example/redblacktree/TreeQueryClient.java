@@ -0,0 +1,99 @@
+package org.example.redblacktree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.function.Consumer;
+
+/**
+ * Client for a {@link TreeQueryServer}. A client holds one connection and is not thread-safe,
+ * concurrent readers use one client each. Range scans and diffs are handed to a consumer key by
+ * key as they arrive.
+ */
+public class TreeQueryClient<T extends Comparable<T>> implements Closeable {
+    public static final int HEAD = QueryProtocol.HEAD;
+
+    private final KeyCodec<T> codec;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private int lastVersion = HEAD;
+
+    public TreeQueryClient(int port, KeyCodec<T> codec) throws IOException {
+        this.codec = codec;
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    public T get(T value) throws IOException {
+        return get(value, HEAD);
+    }
+
+    public T get(T value, int version) throws IOException {
+        out.writeByte(QueryProtocol.GET);
+        out.writeInt(version);
+        QueryProtocol.writeKey(out, codec, value);
+        readStatus();
+        return in.readBoolean() ? QueryProtocol.readKey(in, codec) : null;
+    }
+
+    public void range(T from, T to, Consumer<T> consumer) throws IOException {
+        range(from, to, HEAD, consumer);
+    }
+
+    public void range(T from, T to, int version, Consumer<T> consumer) throws IOException {
+        out.writeByte(QueryProtocol.RANGE);
+        out.writeInt(version);
+        QueryProtocol.writeKey(out, codec, from);
+        QueryProtocol.writeKey(out, codec, to);
+        readStatus();
+        readKeys(consumer);
+    }
+
+    // keys present in exactly one of the two versions
+    public void diff(int version, int otherVersion, Consumer<T> consumer) throws IOException {
+        out.writeByte(QueryProtocol.DIFF);
+        out.writeInt(version);
+        out.writeInt(otherVersion);
+        readStatus();
+        readKeys(consumer);
+    }
+
+    public int versionCount() throws IOException {
+        out.writeByte(QueryProtocol.VERSIONS);
+        out.writeInt(HEAD);
+        readStatus();
+        return in.readInt();
+    }
+
+    // the version the last request was served from, useful to pin follow-up requests to a head read
+    public int getLastVersion() {
+        return lastVersion;
+    }
+
+    private void readStatus() throws IOException {
+        out.flush();
+        if (in.readByte() != QueryProtocol.OK) {
+            throw new IOException("query failed: " + in.readUTF());
+        }
+        lastVersion = in.readInt();
+    }
+
+    private void readKeys(Consumer<T> consumer) throws IOException {
+        for (int length = in.readInt(); length != QueryProtocol.END_OF_KEYS; length = in.readInt()) {
+            consumer.accept(QueryProtocol.readKey(in, codec, length));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,199 @@
+package org.example.redblacktree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Embeddable loopback server giving other processes read access to the current and historical
+ * versions of a {@link RedBlackTree}. Each request resolves its version to that version's root
+ * once, so it is served from an immutable snapshot while the owner keeps writing. Range scans
+ * are streamed through a fixed-size buffer; a diff only visits the subtrees whose hashes differ,
+ * but collects and sorts those keys in memory before sending them. Versions must not be released
+ * while they can still be queried.
+ */
+public class TreeQueryServer<T extends Comparable<T>> implements Closeable {
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final RedBlackTree<T> tree;
+    private final KeyCodec<T> codec;
+    private final ServerSocket serverSocket;
+    // one thread per connection; this is the place to switch to virtual threads once the build targets Java 21
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "tree-query-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+
+    private static final Logger logger = Logger.getLogger(TreeQueryServer.class.getName());
+
+    public TreeQueryServer(RedBlackTree<T> tree, KeyCodec<T> codec) throws IOException {
+        this(tree, codec, 0);
+    }
+
+    public TreeQueryServer(RedBlackTree<T> tree, KeyCodec<T> codec, int port) throws IOException {
+        this.tree = tree;
+        this.codec = codec;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "tree-query-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("query server listening on port " + getPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                openSockets.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.log(Level.WARNING, "accepting a connection failed", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE))) {
+            while (true) {
+                byte operation;
+                try {
+                    operation = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                handle(operation, in, out);
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // closed by the client or by close()
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "query connection failed", e);
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+
+    private void handle(byte operation, DataInputStream in, DataOutputStream out) throws IOException {
+        int requestedVersion = in.readInt();
+        // arguments are read in full before anything can fail, so the stream stays in sync after an error
+        T from = null;
+        T to = null;
+        int otherVersion = 0;
+        if (operation == QueryProtocol.GET) {
+            from = QueryProtocol.readKey(in, codec);
+        } else if (operation == QueryProtocol.RANGE) {
+            from = QueryProtocol.readKey(in, codec);
+            to = QueryProtocol.readKey(in, codec);
+        } else if (operation == QueryProtocol.DIFF) {
+            otherVersion = in.readInt();
+        } else if (operation != QueryProtocol.VERSIONS) {
+            throw new IOException("unknown operation " + operation);
+        }
+
+        int version;
+        Node<T> root;
+        Node<T> otherRoot = null;
+        try {
+            version = pin(requestedVersion);
+            root = tree.getRoot(version);
+            if (operation == QueryProtocol.DIFF) {
+                otherRoot = tree.getRoot(pin(otherVersion));
+            }
+        } catch (RuntimeException e) {
+            out.writeByte(QueryProtocol.ERROR);
+            out.writeUTF(String.valueOf(e.getMessage()));
+            return;
+        }
+        out.writeByte(QueryProtocol.OK);
+        out.writeInt(version);
+
+        switch (operation) {
+            case QueryProtocol.GET -> {
+                Node<T> node = lookup(root, from);
+                if (node == null) {
+                    out.writeBoolean(false);
+                } else {
+                    out.writeBoolean(true);
+                    QueryProtocol.writeKey(out, codec, node.getValue());
+                }
+            }
+            case QueryProtocol.RANGE -> {
+                Iterator<T> range = new RangeIterator<>(root, from, to);
+                while (range.hasNext()) {
+                    QueryProtocol.writeKey(out, codec, range.next());
+                }
+                out.writeInt(QueryProtocol.END_OF_KEYS);
+            }
+            case QueryProtocol.DIFF -> {
+                List<T> difference = TreeComparison.symmetricDifference(root, otherRoot);
+                for (T value : difference) {
+                    QueryProtocol.writeKey(out, codec, value);
+                }
+                out.writeInt(QueryProtocol.END_OF_KEYS);
+            }
+            default -> out.writeInt(version + 1);
+        }
+    }
+
+    private int pin(int version) {
+        int head = tree.getHeadVersion();
+        if (version == QueryProtocol.HEAD) {
+            if (head < 0) {
+                throw new IllegalStateException("tree has no versions yet");
+            }
+            return head;
+        }
+        if (version < 0 || version > head) {
+            throw new IndexOutOfBoundsException("version " + version + " out of bounds for " + (head + 1) + " versions");
+        }
+        return version;
+    }
+
+    private Node<T> lookup(Node<T> node, T value) {
+        while (node != null) {
+            int comparison = value.compareTo(node.getValue());
+            if (comparison == 0) {
+                return node;
+            }
+            node = comparison < 0 ? node.getChildLeft() : node.getChildRight();
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : openSockets) {
+            socket.close();
+        }
+        connections.shutdown();
+        logger.info("query server on port " + getPort() + " closed");
+    }
+}
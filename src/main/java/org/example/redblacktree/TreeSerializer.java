@@ -0,0 +1,255 @@
+package org.example.redblacktree;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary format for the version history of a {@link RedBlackTree}.
+ * Every node is written exactly once, by the first version that references it,
+ * so each version is stored as the delta of its newly created nodes plus its root id.
+ * Nodes carry value and colour only, so subclasses keeping more per node (counts, augmentations)
+ * are rejected instead of being read back as plain trees.
+ */
+public class TreeSerializer<T extends Comparable<T>> {
+    private static final int MAGIC = 0x52425456;
+    private static final int FORMAT_VERSION = 1;
+    private static final int NO_NODE = -1;
+    private static final int NODE_HEADER_BYTES = 1 + 3 * Integer.BYTES;
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    // lengths read back are allocated before the key arrives, so they share the query protocol's limit
+    private static final int MAX_KEY_LENGTH = QueryProtocol.MAX_KEY_LENGTH;
+
+    private final KeyCodec<T> codec;
+    private final int bufferSize;
+
+    public TreeSerializer(KeyCodec<T> codec) {
+        this(codec, DEFAULT_BUFFER_SIZE);
+    }
+
+    public TreeSerializer(KeyCodec<T> codec, int bufferSize) {
+        if (bufferSize < NODE_HEADER_BYTES) {
+            throw new IllegalArgumentException("buffer size " + bufferSize + " is too small");
+        }
+        this.codec = codec;
+        this.bufferSize = bufferSize;
+    }
+
+    // released versions are not part of the history any more, the tree read back numbers the retained ones from 0
+    public void write(RedBlackTree<T> tree, WritableByteChannel channel) throws IOException {
+        checkSerializable(tree);
+        write(tree.getHistory(), channel);
+    }
+
+    public void writeSnapshot(RedBlackTree<T> tree, WritableByteChannel channel) throws IOException {
+        checkSerializable(tree);
+        List<Node<T>> versions = new ArrayList<>();
+        versions.add(tree.getRoot());
+        write(versions, channel);
+    }
+
+    public RedBlackTree<T> read(ReadableByteChannel channel) throws IOException {
+        Reader reader = new Reader(channel);
+        if (reader.readInt() != MAGIC) {
+            throw new IOException("channel does not contain a serialized red-black tree");
+        }
+        int formatVersion = reader.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("unsupported format version " + formatVersion);
+        }
+
+        RedBlackTree<T> tree = new RedBlackTree<>();
+        List<Node<T>> nodes = new ArrayList<>();
+        // counts only bound loops, nothing is allocated for them up front, so a count larger than the
+        // data runs into the end of the channel
+        int versionCount = reader.readInt();
+        if (versionCount < 0) {
+            throw new IOException("invalid version count " + versionCount);
+        }
+        for (int version = 0; version < versionCount; version++) {
+            int newNodes = reader.readInt();
+            if (newNodes < 0 || newNodes > Integer.MAX_VALUE - nodes.size()) {
+                throw new IOException("invalid node count " + newNodes + " in version " + version);
+            }
+            for (int i = 0; i < newNodes; i++) {
+                reader.fill(NODE_HEADER_BYTES);
+                NodeColour colour = reader.buffer.get() == 0 ? NodeColour.RED : NodeColour.BLACK;
+                Node<T> left = resolve(nodes, reader.buffer.getInt());
+                Node<T> right = resolve(nodes, reader.buffer.getInt());
+                int keyLength = reader.buffer.getInt();
+                nodes.add(new Node<>(reader.readKey(keyLength), colour, left, right));
+            }
+            tree.pushVersion(resolve(nodes, reader.readInt()));
+        }
+        return tree;
+    }
+
+    private static void checkSerializable(RedBlackTree<?> tree) {
+        if (tree.getClass() != RedBlackTree.class) {
+            throw new IllegalArgumentException(tree.getClass().getSimpleName() + " keeps state the format cannot carry, only plain red-black trees can be serialized");
+        }
+    }
+
+    private void write(List<Node<T>> versions, WritableByteChannel channel) throws IOException {
+        Writer writer = new Writer(channel);
+        Map<Node<T>, Integer> ids = new IdentityHashMap<>();
+        List<Node<T>> newNodes = new ArrayList<>();
+
+        writer.writeInt(MAGIC);
+        writer.writeInt(FORMAT_VERSION);
+        writer.writeInt(versions.size());
+        for (Node<T> root : versions) {
+            newNodes.clear();
+            collectNewNodes(root, ids, newNodes);
+            writer.writeInt(newNodes.size());
+            for (Node<T> node : newNodes) {
+                int keyLength = codec.encodedLength(node.getValue());
+                if (keyLength > MAX_KEY_LENGTH) {
+                    throw new IOException("key of " + keyLength + " bytes exceeds the limit of " + MAX_KEY_LENGTH);
+                }
+                writer.ensure(NODE_HEADER_BYTES);
+                writer.buffer.put((byte) (node.isRed() ? 0 : 1));
+                writer.buffer.putInt(idOf(ids, node.getChildLeft()));
+                writer.buffer.putInt(idOf(ids, node.getChildRight()));
+                writer.buffer.putInt(keyLength);
+                writer.writeKey(node.getValue(), keyLength);
+            }
+            writer.writeInt(idOf(ids, root));
+        }
+        writer.flush();
+    }
+
+    // post-order, so children always get their id before the nodes referencing them
+    private void collectNewNodes(Node<T> node, Map<Node<T>, Integer> ids, List<Node<T>> newNodes) {
+        if (node == null || ids.containsKey(node)) {
+            return;
+        }
+        collectNewNodes(node.getChildLeft(), ids, newNodes);
+        collectNewNodes(node.getChildRight(), ids, newNodes);
+        ids.put(node, ids.size());
+        newNodes.add(node);
+    }
+
+    private int idOf(Map<Node<T>, Integer> ids, Node<T> node) {
+        return node == null ? NO_NODE : ids.get(node);
+    }
+
+    private Node<T> resolve(List<Node<T>> nodes, int id) throws IOException {
+        if (id == NO_NODE) {
+            return null;
+        }
+        if (id < 0 || id >= nodes.size()) {
+            throw new IOException("reference to unknown node " + id);
+        }
+        return nodes.get(id);
+    }
+
+    private class Writer {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+
+        private Writer(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        private void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        private void writeKey(T value, int keyLength) throws IOException {
+            if (keyLength <= buffer.capacity()) {
+                ensure(keyLength);
+                codec.encode(value, buffer);
+                return;
+            }
+            flush();
+            ByteBuffer large = ByteBuffer.allocate(keyLength);
+            codec.encode(value, large);
+            drain(large.flip());
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            drain(buffer.flip());
+            buffer.clear();
+        }
+
+        private void drain(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+    }
+
+    private class Reader {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize).flip();
+
+        private Reader(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        private int readInt() throws IOException {
+            fill(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        private T readKey(int keyLength) throws IOException {
+            if (keyLength < 0 || keyLength > MAX_KEY_LENGTH) {
+                throw new IOException("invalid key length " + keyLength);
+            }
+            if (keyLength <= buffer.capacity()) {
+                fill(keyLength);
+                return decode(buffer, keyLength);
+            }
+            ByteBuffer large = ByteBuffer.allocate(keyLength);
+            int buffered = Math.min(buffer.remaining(), keyLength);
+            large.put(buffer.slice(buffer.position(), buffered));
+            buffer.position(buffer.position() + buffered);
+            readFully(large);
+            return decode(large.flip(), keyLength);
+        }
+
+        private T decode(ByteBuffer source, int keyLength) throws IOException {
+            int start = source.position();
+            T value = codec.decode(source, keyLength);
+            if (source.position() - start != keyLength) {
+                throw new IOException("key codec consumed " + (source.position() - start) + " of " + keyLength + " bytes");
+            }
+            return value;
+        }
+
+        private void fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("unexpected end of serialized tree");
+                }
+            }
+            buffer.flip();
+        }
+
+        private void readFully(ByteBuffer target) throws IOException {
+            while (target.hasRemaining()) {
+                if (channel.read(target) < 0) {
+                    throw new EOFException("unexpected end of serialized tree");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.redblacktree;
+
+import java.util.NoSuchElementException;
+
+/**
+ * One entry of the version history: the root plus metadata computed once at commit.
+ */
+public class Version<T extends Comparable<T>> {
+    private final Node<T> root;
+    private final int size;
+    private final int height;
+    private final int blackHeight;
+    private final T min;
+    private final T max;
+    private final boolean released;
+
+    Version(Node<T> root, int size) {
+        this.root = root;
+        this.size = size;
+        this.height = Node.height(root);
+        this.blackHeight = computeBlackHeight(root);
+        this.min = root == null ? null : leftmost(root).getValue();
+        this.max = root == null ? null : rightmost(root).getValue();
+        this.released = false;
+    }
+
+    private Version(Version<T> version) {
+        this.root = null;
+        this.size = version.size;
+        this.height = version.height;
+        this.blackHeight = version.blackHeight;
+        this.min = version.min;
+        this.max = version.max;
+        this.released = true;
+    }
+
+    // keeps the metadata but drops the root
+    Version<T> release() {
+        return new Version<>(this);
+    }
+
+    public Node<T> getRoot() {
+        if (released) {
+            throw new IllegalStateException("version was released");
+        }
+        return root;
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBlackHeight() {
+        return blackHeight;
+    }
+
+    public T getMin() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("version is empty");
+        }
+        return min;
+    }
+
+    public T getMax() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("version is empty");
+        }
+        return max;
+    }
+
+    private static int computeBlackHeight(Node<?> node) {
+        int blackHeight = 0;
+        for (; node != null; node = node.getChildLeft()) {
+            if (node.isBlack()) {
+                blackHeight++;
+            }
+        }
+        return blackHeight;
+    }
+
+    private static <T extends Comparable<T>> Node<T> leftmost(Node<T> node) {
+        while (node.getChildLeft() != null) {
+            node = node.getChildLeft();
+        }
+        return node;
+    }
+
+    private static <T extends Comparable<T>> Node<T> rightmost(Node<T> node) {
+        while (node.getChildRight() != null) {
+            node = node.getChildRight();
+        }
+        return node;
+    }
+
+    @Override
+    public String toString() {
+        return "Version{size=" + size + ", height=" + height + ", blackHeight=" + blackHeight + ", min=" + min + ", max=" + max + "}";
+    }
+}
@@ -0,0 +1,18 @@
+package org.example.redblacktree;
+
+import java.util.List;
+
+public interface VersionedTree<T extends Comparable<T>, N> extends Iterable<T> {
+
+    void insert(T value);
+
+    void delete(T value);
+
+    int size();
+
+    List<N> getHistory();
+
+    VersionedTree<T, N> getVersion(int version);
+
+    VersionedTree<T, N> getPreviousVersion();
+}
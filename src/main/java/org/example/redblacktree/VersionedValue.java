@@ -0,0 +1,30 @@
+package org.example.redblacktree;
+
+import java.util.BitSet;
+
+public class VersionedValue<T> {
+    private final T value;
+    private final BitSet versions;
+
+    VersionedValue(T value, BitSet versions) {
+        this.value = value;
+        this.versions = versions;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public BitSet getVersions() {
+        return (BitSet) versions.clone();
+    }
+
+    public boolean isIn(int version) {
+        return versions.get(version);
+    }
+
+    @Override
+    public String toString() {
+        return value + "@" + versions;
+    }
+}
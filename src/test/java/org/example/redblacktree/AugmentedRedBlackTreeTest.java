@@ -0,0 +1,75 @@
+package org.example.redblacktree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AugmentedRedBlackTreeTest {
+
+    private static final Augmentation<Integer, Long> SUM = new Augmentation<>() {
+        @Override
+        public Long measure(Integer value) {
+            return value.longValue();
+        }
+
+        @Override
+        public Long combine(Long left, Long right) {
+            return left + right;
+        }
+    };
+
+    private static final Augmentation<Integer, Integer> MIN = new Augmentation<>() {
+        @Override
+        public Integer measure(Integer value) {
+            return value;
+        }
+
+        @Override
+        public Integer combine(Integer left, Integer right) {
+            return Math.min(left, right);
+        }
+    };
+
+    @Test
+    void rangeSumTest() {
+        List<Integer> treeList = List.of(7, 5, 8, 4, 6, 9, 2, 10, 3);
+        AugmentedRedBlackTree<Integer, Long> tree = new AugmentedRedBlackTree<>(SUM);
+        treeList.forEach(tree::insert);
+
+        assertEquals(54L, tree.aggregate());
+        assertEquals(18L, tree.aggregate(3, 6));
+        assertEquals(20L, tree.aggregate(1, 6));
+        assertEquals(10L, tree.aggregate(10, 20));
+        assertNull(tree.aggregate(11, 20));
+        assertTrue(tree.validateRedBlackProperties());
+    }
+
+    @Test
+    void rangeSumAfterDeleteAndOnVersionsTest() {
+        List<Integer> treeList = List.of(7, 5, 8, 4, 6, 9, 2, 10, 3);
+        AugmentedRedBlackTree<Integer, Long> tree = new AugmentedRedBlackTree<>(SUM);
+        treeList.forEach(tree::insert);
+        tree.delete(9);
+        tree.delete(4);
+        tree.delete(7);
+
+        assertEquals(34L, tree.aggregate());
+        assertEquals(19L, tree.aggregate(4, 8));
+        assertEquals(54L, tree.getVersion(8).aggregate(), "version 8 holds all inserted values");
+        assertEquals(24L, tree.getVersion(8).aggregate(7, 9));
+        assertSame(tree.getVersion(8), tree.getVersion(8), "snapshots are cached per version");
+        assertEquals(30L, tree.branch(4).aggregate(), "branch from version 4 holds 7, 5, 8, 4 and 6");
+    }
+
+    @Test
+    void minimumTest() {
+        AugmentedRedBlackTree<Integer, Integer> tree = new AugmentedRedBlackTree<>(MIN);
+        List.of(17, 9, 19, 18, 75, 24, 81).forEach(tree::insert);
+        tree.delete(9);
+
+        assertEquals(17, tree.aggregate());
+        assertEquals(18, tree.aggregate(18, 80));
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.redblacktree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Times {@link RedBlackTree#buildFrom} on a large unsorted input with duplicates, run inside
+ * fork/join pools of increasing parallelism, so both the parallel sort and the subtree tasks are
+ * limited to that many workers. Run with
+ * {@code java -cp target/classes:target/test-classes org.example.redblacktree.BuildFromBenchmark [values] [rounds]}.
+ */
+public class BuildFromBenchmark {
+    // held here, the level would be lost with the logger on the next collection otherwise
+    private static final Logger treeLogger = Logger.getLogger(RedBlackTree.class.getName());
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        treeLogger.setLevel(Level.WARNING);
+
+        // about one value in twenty is a duplicate, which the build has to drop
+        List<Integer> values = new ArrayList<>(size);
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            values.add(random.nextInt(size * 10));
+        }
+
+        // levels beyond the available processors show what oversubscription costs
+        List<Integer> levels = new ArrayList<>(List.of(1, 2, 4, 8));
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (!levels.contains(processors)) {
+            levels.add(processors);
+            levels.sort(null);
+        }
+
+        double sequentialMillis = 0;
+        for (int parallelism : levels) {
+            double millis = median(time(values, parallelism, rounds));
+            if (parallelism == 1) {
+                sequentialMillis = millis;
+            }
+            System.out.printf("parallelism %3d  %9.1f ms  %6.2fx%s%n", parallelism, millis, sequentialMillis / millis,
+                    parallelism > processors ? "  (" + processors + " processors)" : "");
+        }
+    }
+
+    private static double[] time(List<Integer> values, int parallelism, int rounds) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // the first round only warms up
+            double[] millis = new double[rounds];
+            for (int round = -1; round < rounds; round++) {
+                long start = System.nanoTime();
+                RedBlackTree<Integer> tree = pool.submit(() -> RedBlackTree.buildFrom(values)).join();
+                long nanos = System.nanoTime() - start;
+                if (!tree.validateRedBlackProperties()) {
+                    throw new IllegalStateException("built tree violates the red-black properties");
+                }
+                if (round >= 0) {
+                    millis[round] = nanos / 1e6;
+                }
+            }
+            return millis;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static double median(double[] millis) {
+        double[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
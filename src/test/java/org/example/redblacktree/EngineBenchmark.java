@@ -0,0 +1,104 @@
+package org.example.redblacktree;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compares the red-black and the B+ tree engine on insert cost, bytes allocated per version,
+ * point lookup latency and iteration throughput. Run with
+ * {@code java -cp target/classes:target/test-classes org.example.redblacktree.EngineBenchmark [keys] [fanout]}.
+ */
+public class EngineBenchmark {
+
+    public static void main(String[] args) {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int fanout = args.length > 1 ? Integer.parseInt(args[1]) : PersistentBPlusTree.DEFAULT_FANOUT;
+        Logger.getLogger(RedBlackTree.class.getName()).setLevel(Level.WARNING);
+
+        List<Integer> values = new ArrayList<>();
+        for (int value = 0; value < keys; value++) {
+            values.add(value);
+        }
+        Collections.shuffle(values, new Random(42));
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("round " + round);
+            RedBlackTree<Integer> redBlackTree = new RedBlackTree<>();
+            run("red-black", redBlackTree, values, value -> redBlackTree.findNode(value) != null);
+            PersistentBPlusTree<Integer> bPlusTree = new PersistentBPlusTree<>(fanout);
+            run("b+ (fanout " + fanout + ")", bPlusTree, values, bPlusTree::contains);
+            hotKeys(redBlackTree, values);
+        }
+    }
+
+    // a thousand hot keys receive nine out of ten lookups, once without and once with the lookup cache
+    private static void hotKeys(RedBlackTree<Integer> tree, List<Integer> values) {
+        Random random = new Random(42);
+        int[] lookups = new int[values.size()];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = values.get(random.nextInt(10) == 0 ? random.nextInt(values.size()) : random.nextInt(Math.min(1_000, values.size())));
+        }
+        for (boolean cached : new boolean[] {false, true}) {
+            if (cached) {
+                tree.enableLookupCache(4_096);
+            }
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int value : lookups) {
+                sum += tree.findNode(value).getValue();
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%-20s lookup %7.1f ns/op  (%d)%s%n",
+                    cached ? "hot keys, cached" : "hot keys",
+                    (double) nanos / lookups.length,
+                    sum,
+                    cached ? "  " + tree.getLookupCache() : "");
+        }
+        tree.disableLookupCache();
+    }
+
+    private static <N> void run(String name, VersionedTree<Integer, N> tree, List<Integer> values, Lookup lookup) {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        values.forEach(tree::insert);
+        long insertNanos = System.nanoTime() - start;
+        long bytesPerVersion = (allocatedBytes() - allocatedBefore) / values.size();
+
+        start = System.nanoTime();
+        int found = 0;
+        for (Integer value : values) {
+            if (lookup.contains(value)) {
+                found++;
+            }
+        }
+        long lookupNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long sum = 0;
+        for (Integer value : tree) {
+            sum += value;
+        }
+        long iterationNanos = System.nanoTime() - start;
+
+        System.out.printf("%-20s insert %8.1f ns/op  %6d bytes/version  lookup %7.1f ns/op  iteration %8.2f Melem/s  (%d, %d)%n",
+                name,
+                (double) insertNanos / values.size(),
+                bytesPerVersion,
+                (double) lookupNanos / values.size(),
+                values.size() * 1_000.0 / iterationNanos,
+                found, sum);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private interface Lookup {
+        boolean contains(Integer value);
+    }
+}
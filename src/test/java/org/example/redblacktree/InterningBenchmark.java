@@ -0,0 +1,113 @@
+package org.example.redblacktree;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reports the heap retained by a long history with and without node interning, for churn that
+ * rebuilds subtrees which already exist in older versions: values changed and changed back, and
+ * batches undone by branching before them and applied again. Run with
+ * {@code java -cp target/classes:target/test-classes org.example.redblacktree.InterningBenchmark [keys] [churn]}.
+ */
+public class InterningBenchmark {
+    private static final int REDO_BATCH = 100;
+
+    // held here, the level would be lost with the logger on the next collection otherwise
+    private static final Logger treeLogger = Logger.getLogger(RedBlackTree.class.getName());
+
+    public static void main(String[] args) {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int churn = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        treeLogger.setLevel(Level.WARNING);
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("round " + round);
+            run("rewrites", RedBlackTree::new, keys, tree -> rewrite(tree, keys, churn));
+            run("rewrites, interned", RedBlackTree::withNodeInterning, keys, tree -> rewrite(tree, keys, churn));
+            run("undo/redo", RedBlackTree::new, keys, tree -> redo(tree, keys, churn));
+            run("undo/redo, interned", RedBlackTree::withNodeInterning, keys, tree -> redo(tree, keys, churn));
+        }
+    }
+
+    private static void run(String name, Supplier<RedBlackTree<Setting>> factory, int keys, Workload workload) {
+        long heapBefore = retainedHeap();
+        RedBlackTree<Setting> tree = factory.get();
+        for (int value = 0; value < keys; value++) {
+            tree.insert(new Setting(value, 0));
+        }
+        long start = System.nanoTime();
+        List<RedBlackTree<Setting>> retainedTrees = workload.run(tree);
+        long churnNanos = System.nanoTime() - start;
+        NodeInterner<Setting> interner = tree.getInterner();
+        int internedNodes = 0;
+        if (interner != null) {
+            // a collection only enqueues the references of dropped nodes, the interner discards them on its next call
+            retainedHeap();
+            internedNodes = interner.size();
+        }
+        long retained = retainedHeap() - heapBefore;
+
+        // branches share their ancestry, so only the versions each tree committed itself count as writes
+        long writes = tree.getHeadVersion() + 1;
+        for (RedBlackTree<Setting> retainedTree : retainedTrees) {
+            if (retainedTree != tree) {
+                writes += retainedTree.getHeadVersion() - retainedTree.getForkVersion();
+            }
+        }
+        System.out.printf("%-20s %8.2f MB retained  %5d bytes/write  churn %8.1f ns/write%s%n",
+                name,
+                retained / (1024.0 * 1024.0),
+                retained / writes,
+                (double) churnNanos / (writes - keys),
+                interner == null ? "" : String.format("  (%d nodes interned, %d hits, %d misses)",
+                        internedNodes, interner.getHitCount(), interner.getMissCount()));
+    }
+
+    // sets a value and restores it, the restoring write rebuilds the path of the version before
+    private static List<RedBlackTree<Setting>> rewrite(RedBlackTree<Setting> tree, int keys, int churn) {
+        Random random = new Random(42);
+        for (int i = 0; i < churn; i += 2) {
+            int key = random.nextInt(keys);
+            tree.upsert(new Setting(key, 1));
+            tree.upsert(new Setting(key, 0));
+        }
+        return List.of(tree);
+    }
+
+    // undoes the last batch by branching before it and applies the same batch again on the branch
+    private static List<RedBlackTree<Setting>> redo(RedBlackTree<Setting> tree, int keys, int churn) {
+        List<RedBlackTree<Setting>> branches = new ArrayList<>(List.of(tree));
+        int batch = Math.min(REDO_BATCH, keys);
+        for (int i = 0; i < churn; i += batch) {
+            RedBlackTree<Setting> branch = tree.branch(tree.getHeadVersion() - batch);
+            for (int value = keys - batch; value < keys; value++) {
+                branch.insert(new Setting(value, 0));
+            }
+            branches.add(branch);
+        }
+        return branches;
+    }
+
+    private static long retainedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private record Setting(int key, int value) implements Comparable<Setting> {
+        @Override
+        public int compareTo(Setting other) {
+            return Integer.compare(key, other.key);
+        }
+    }
+
+    private interface Workload {
+        List<RedBlackTree<Setting>> run(RedBlackTree<Setting> tree);
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.redblacktree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntervalTreeTest {
+
+    @Test
+    void overlappingTest() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        tree.insert(15, 20);
+        tree.insert(10, 30);
+        tree.insert(17, 19);
+        tree.insert(5, 20);
+        tree.insert(12, 15);
+        tree.insert(30, 40);
+
+        assertEquals(List.of(new Interval<>(5, 20), new Interval<>(10, 30), new Interval<>(12, 15)), tree.overlapping(6, 14));
+        assertEquals(List.of(new Interval<>(10, 30), new Interval<>(30, 40)), tree.overlapping(25, 35));
+        assertEquals(List.of(), tree.overlapping(41, 50));
+        assertEquals(40, tree.aggregate());
+        assertTrue(tree.validateRedBlackProperties());
+    }
+
+    @Test
+    void overlappingOnVersionsTest() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        tree.insert(15, 20);
+        tree.insert(10, 30);
+        tree.insert(17, 19);
+        tree.insert(5, 20);
+        tree.delete(5, 20);
+
+        assertEquals(List.of(new Interval<>(10, 30)), tree.overlapping(6, 14));
+        assertEquals(List.of(new Interval<>(5, 20), new Interval<>(10, 30)), tree.getVersion(3).overlapping(6, 14));
+        assertEquals(List.of(), tree.getVersion(0).overlapping(21, 22));
+        assertEquals(List.of(new Interval<>(10, 30)), tree.overlapping(21, 22));
+        assertEquals(30, tree.aggregate());
+    }
+
+    @Test
+    void invalidIntervalTest() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        assertThrows(IllegalArgumentException.class, () -> tree.insert(5, 4));
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.redblacktree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultisetRedBlackTreeTest {
+
+    @Test
+    void countsTest() {
+        MultisetRedBlackTree<Integer> tree = new MultisetRedBlackTree<>();
+        List.of(7, 5, 8, 5, 4, 7, 5, 9).forEach(tree::insert);
+
+        assertEquals(3, tree.count(5));
+        assertEquals(2, tree.count(7));
+        assertEquals(0, tree.count(6));
+        assertEquals(5, tree.size());
+        assertEquals(8, tree.totalCount());
+        assertTrue(tree.validateRedBlackProperties());
+
+        tree.delete(5);
+        assertEquals(2, tree.count(5));
+        assertEquals(1, tree.getVersion(1).count(5));
+        assertEquals(3, tree.getVersion(6).count(5));
+        assertEquals(List.of(new KeyLifetime(1, KeyLifetime.STILL_PRESENT)), tree.getLifetimes(5));
+
+        tree.deleteAll(5);
+        assertEquals(0, tree.count(5));
+        assertEquals(4, tree.size());
+        assertEquals(5, tree.totalCount());
+    }
+
+    @Test
+    void duplicatesOnlyCopyTheSearchPathTest() {
+        MultisetRedBlackTree<Integer> tree = new MultisetRedBlackTree<>();
+        List.of(4, 2, 6, 1, 3, 5, 7).forEach(tree::insert);
+        Node<Integer> before = tree.getRoot();
+        tree.insert(1);
+
+        Node<Integer> after = tree.getRoot();
+        assertSame(before.getChildRight(), after.getChildRight(), "a duplicate must not touch the other subtree");
+        assertSame(before.getChildLeft().getChildRight(), after.getChildLeft().getChildRight());
+        assertEquals(before.getColour(), after.getColour());
+        assertFalse(tree.getVersion(tree.getHeadVersion() - 1).structurallyEquals(tree), "counts are part of the version hash");
+        assertTrue(tree.add(1));
+        assertEquals(3, tree.count(1));
+    }
+
+    @Test
+    void iterationTest() {
+        MultisetRedBlackTree<String> tree = new MultisetRedBlackTree<>();
+        List.of("b", "a", "b", "c", "b", "a").forEach(tree::insert);
+
+        List<String> collapsed = new ArrayList<>();
+        tree.forEach(collapsed::add);
+        assertEquals(List.of("a", "b", "c"), collapsed);
+
+        List<String> expanded = new ArrayList<>();
+        tree.withDuplicates().forEach(expanded::add);
+        assertEquals(List.of("a", "a", "b", "b", "b", "c"), expanded);
+
+        MultisetRedBlackTree<String> branch = tree.branch(2);
+        branch.insert("a");
+        List<String> branchExpanded = new ArrayList<>();
+        branch.withDuplicates().forEach(branchExpanded::add);
+        assertEquals(List.of("a", "a", "b", "b"), branchExpanded);
+    }
+}
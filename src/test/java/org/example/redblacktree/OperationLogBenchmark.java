@@ -0,0 +1,96 @@
+package org.example.redblacktree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Measures the operation log: write latency per operation for several group commit sizes (one
+ * fsync per group), recovery time from the full log, and recovery time from a snapshot plus a
+ * short log suffix. Run with
+ * {@code java -cp target/classes:target/test-classes org.example.redblacktree.OperationLogBenchmark [operations] [directory]}.
+ */
+public class OperationLogBenchmark {
+    private static final int[] GROUP_COMMIT_SIZES = {1, 8, 64, 512};
+
+    public static void main(String[] args) throws IOException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Path parent = args.length > 1 ? Path.of(args[1]) : Path.of(System.getProperty("java.io.tmpdir"));
+        Logger.getLogger(RedBlackTree.class.getName()).setLevel(Level.WARNING);
+        Logger.getLogger(OperationLog.class.getName()).setLevel(Level.WARNING);
+
+        List<Integer> values = new ArrayList<>();
+        for (int value = 0; value < operations; value++) {
+            values.add(value);
+        }
+        Collections.shuffle(values, new Random(42));
+
+        for (int groupCommitSize : GROUP_COMMIT_SIZES) {
+            Path directory = Files.createTempDirectory(parent, "operation-log-benchmark");
+            try {
+                run(directory, groupCommitSize, values);
+            } finally {
+                delete(directory);
+            }
+        }
+    }
+
+    private static void run(Path directory, int groupCommitSize, List<Integer> values) throws IOException {
+        RedBlackTree<Integer> tree = OperationLog.recover(directory, KeyCodec.integers(), groupCommitSize);
+        long[] latencies = new long[values.size()];
+        long start = System.nanoTime();
+        for (int i = 0; i < values.size(); i++) {
+            long operationStart = System.nanoTime();
+            tree.insert(values.get(i));
+            latencies[i] = System.nanoTime() - operationStart;
+        }
+        tree.getOperationLog().commit();
+        long writeNanos = System.nanoTime() - start;
+        tree.getOperationLog().close();
+
+        start = System.nanoTime();
+        RedBlackTree<Integer> recovered = OperationLog.recover(directory, KeyCodec.integers(), groupCommitSize);
+        long logRecoveryNanos = System.nanoTime() - start;
+
+        recovered.getOperationLog().snapshot();
+        int suffix = Math.max(1, values.size() / 100);
+        for (int i = 0; i < suffix; i++) {
+            recovered.insert(values.size() + i);
+        }
+        recovered.getOperationLog().close();
+        start = System.nanoTime();
+        RedBlackTree<Integer> fromSnapshot = OperationLog.recover(directory, KeyCodec.integers(), groupCommitSize);
+        long snapshotRecoveryNanos = System.nanoTime() - start;
+        fromSnapshot.getOperationLog().close();
+
+        Arrays.sort(latencies);
+        System.out.printf("group %4d  write %9.0f ops/s  p50 %8.1f us  p99 %8.1f us  max %9.1f us  "
+                        + "recovery: log %7.1f ms, snapshot + %d ops %7.1f ms  (%d)%n",
+                groupCommitSize,
+                values.size() * 1e9 / writeNanos,
+                latencies[latencies.length / 2] / 1e3,
+                latencies[(int) (latencies.length * 0.99)] / 1e3,
+                latencies[latencies.length - 1] / 1e3,
+                logRecoveryNanos / 1e6,
+                suffix,
+                snapshotRecoveryNanos / 1e6,
+                fromSnapshot.size());
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
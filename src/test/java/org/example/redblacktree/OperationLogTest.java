@@ -0,0 +1,129 @@
+package org.example.redblacktree;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperationLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoverFromLogTest() throws IOException {
+        RedBlackTree<Integer> tree = OperationLog.recover(directory, KeyCodec.integers(), 4);
+        List.of(7, 5, 8, 4, 6, 9, 2).forEach(tree::insert);
+        tree.delete(5);
+        tree.getOperationLog().close();
+
+        RedBlackTree<Integer> recovered = OperationLog.recover(directory, KeyCodec.integers(), 4);
+        assertEquals(List.of(2, 4, 6, 7, 8, 9), elements(recovered));
+        assertEquals(8, recovered.getOperationLog().getSequenceNumber());
+        assertTrue(recovered.validateRedBlackProperties());
+        recovered.getOperationLog().close();
+    }
+
+    @Test
+    void recoverFromSnapshotAndLogSuffixTest() throws IOException {
+        RedBlackTree<Integer> tree = OperationLog.recover(directory, KeyCodec.integers(), 100);
+        List.of(3, 2, 4, 1).forEach(tree::insert);
+        tree.getOperationLog().snapshot();
+        assertEquals(0, Files.size(directory.resolve(OperationLog.LOG_FILE)), "log was not truncated by the snapshot");
+        tree.insert(5);
+        tree.delete(2);
+        tree.getOperationLog().close();
+
+        RedBlackTree<Integer> recovered = OperationLog.recover(directory, KeyCodec.integers(), 100);
+        assertEquals(List.of(1, 3, 4, 5), elements(recovered));
+        assertEquals(3, recovered.getHistory().size(), "only the log suffix should be replayed on top of the snapshot");
+        recovered.getOperationLog().close();
+    }
+
+    @Test
+    void tornTailIsDiscardedTest() throws IOException {
+        RedBlackTree<Integer> tree = OperationLog.recover(directory, KeyCodec.integers(), 1);
+        List.of(3, 2, 4).forEach(tree::insert);
+        tree.getOperationLog().close();
+        Path log = directory.resolve(OperationLog.LOG_FILE);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(log) - 2);
+        }
+
+        RedBlackTree<Integer> recovered = OperationLog.recover(directory, KeyCodec.integers(), 1);
+        assertEquals(List.of(2, 3), elements(recovered));
+        recovered.insert(4);
+        recovered.getOperationLog().close();
+
+        RedBlackTree<Integer> recoveredAgain = OperationLog.recover(directory, KeyCodec.integers(), 1);
+        assertEquals(List.of(2, 3, 4), elements(recoveredAgain));
+        recoveredAgain.getOperationLog().close();
+    }
+
+    @Test
+    void garbageLengthInTailIsDiscardedTest() throws IOException {
+        RedBlackTree<Integer> tree = OperationLog.recover(directory, KeyCodec.integers(), 1);
+        List.of(3, 2, 4).forEach(tree::insert);
+        tree.getOperationLog().close();
+        Path log = directory.resolve(OperationLog.LOG_FILE);
+        long validLength = Files.size(log);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(16).putInt(Integer.MAX_VALUE - 4).flip());
+        }
+
+        RedBlackTree<Integer> recovered = OperationLog.recover(directory, KeyCodec.integers(), 1);
+        assertEquals(List.of(2, 3, 4), elements(recovered));
+        assertEquals(validLength, Files.size(log), "the torn tail has to be truncated");
+        recovered.getOperationLog().close();
+    }
+
+    @Test
+    void failedAppendLeavesTreeUnchangedTest() throws IOException {
+        KeyCodec<Integer> integers = KeyCodec.integers();
+        KeyCodec<Integer> rejectingNegatives = new KeyCodec<>() {
+            @Override
+            public int encodedLength(Integer value) {
+                return integers.encodedLength(value);
+            }
+
+            @Override
+            public void encode(Integer value, ByteBuffer buffer) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("negative key " + value);
+                }
+                integers.encode(value, buffer);
+            }
+
+            @Override
+            public Integer decode(ByteBuffer buffer, int length) {
+                return integers.decode(buffer, length);
+            }
+        };
+        RedBlackTree<Integer> tree = OperationLog.recover(directory, rejectingNegatives, 1);
+        List.of(3, 2, 4).forEach(tree::insert);
+        assertThrows(IllegalArgumentException.class, () -> tree.insert(-1));
+        assertFalse(tree.contains(-1), "an operation that could not be logged must not become visible");
+        assertEquals(2, tree.getHeadVersion());
+        tree.insert(5);
+        tree.getOperationLog().close();
+
+        RedBlackTree<Integer> recovered = OperationLog.recover(directory, rejectingNegatives, 1);
+        assertEquals(List.of(2, 3, 4, 5), elements(recovered));
+        recovered.getOperationLog().close();
+    }
+
+    private List<Integer> elements(RedBlackTree<Integer> tree) {
+        List<Integer> treeElems = new ArrayList<>();
+        tree.forEach(treeElems::add);
+        return treeElems;
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.redblacktree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentBPlusTreeTest {
+
+    @Test
+    void insertSplitsNodesTest() {
+        PersistentBPlusTree<Integer> tree = new PersistentBPlusTree<>(4);
+        List<Integer> treeList = List.of(7, 5, 8, 4, 6, 9, 2, 10, 3, 1, 11, 12);
+        treeList.forEach(tree::insert);
+
+        List<Integer> treeElems = new ArrayList<>();
+        tree.forEach(treeElems::add);
+        assertEquals(treeList.stream().sorted().toList(), treeElems);
+        assertEquals(treeList.size(), tree.size());
+        assertFalse(tree.getRoot().isLeaf());
+        assertTrue(tree.contains(6));
+        assertFalse(tree.contains(13));
+        assertThrows(IllegalArgumentException.class, () -> tree.insert(6));
+    }
+
+    @Test
+    void deleteMergesNodesTest() {
+        PersistentBPlusTree<Integer> tree = new PersistentBPlusTree<>(4);
+        for (int value = 1; value <= 20; value++) {
+            tree.insert(value);
+        }
+        for (int value = 1; value <= 20; value += 2) {
+            tree.delete(value);
+        }
+
+        List<Integer> treeElems = new ArrayList<>();
+        tree.forEach(treeElems::add);
+        assertEquals(List.of(2, 4, 6, 8, 10, 12, 14, 16, 18, 20), treeElems);
+        assertThrows(NoSuchElementException.class, () -> tree.delete(1));
+
+        for (int value = 2; value <= 20; value += 2) {
+            tree.delete(value);
+        }
+        assertNull(tree.getRoot());
+        assertEquals(0, tree.size());
+    }
+
+    @Test
+    void versionsTest() {
+        PersistentBPlusTree<Integer> tree = new PersistentBPlusTree<>(4);
+        TreeSet<Integer> expected = new TreeSet<>();
+        List<List<Integer>> expectedVersions = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            int value = random.nextInt(50);
+            if (expected.remove(value)) {
+                tree.delete(value);
+            } else {
+                expected.add(value);
+                tree.insert(value);
+            }
+            expectedVersions.add(new ArrayList<>(expected));
+        }
+
+        assertEquals(200, tree.getHistory().size());
+        for (int version = 0; version < expectedVersions.size(); version++) {
+            List<Integer> versionElems = new ArrayList<>();
+            tree.getVersion(version).forEach(versionElems::add);
+            assertEquals(expectedVersions.get(version), versionElems, "version " + version + " differs");
+        }
+        assertSame(tree.getVersion(10), tree.getVersion(10));
+        assertThrows(UnsupportedOperationException.class, () -> tree.getVersion(10).insert(100));
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.redblacktree;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Load test for {@link TreeQueryServer}: point lookups and range scans from concurrent readers,
+ * once through the in-process API and once through one loopback connection per reader. Run with
+ * {@code java -cp target/classes:target/test-classes org.example.redblacktree.QueryServerBenchmark [keys] [readers]}.
+ */
+public class QueryServerBenchmark {
+    private static final int LOOKUPS_PER_READER = 20_000;
+    private static final int SCANS_PER_READER = 200;
+    private static final int SCAN_LENGTH = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Logger.getLogger(RedBlackTree.class.getName()).setLevel(Level.WARNING);
+
+        List<Integer> values = new ArrayList<>();
+        for (int value = 0; value < keys; value++) {
+            values.add(value);
+        }
+        RedBlackTree<Integer> tree = RedBlackTree.buildFrom(values);
+        // pinned up front, the snapshot cache of the tree is not meant for concurrent access
+        RedBlackTree<Integer> head = tree.getVersion(tree.getHeadVersion());
+        ExecutorService pool = Executors.newFixedThreadPool(readers);
+        try (TreeQueryServer<Integer> server = new TreeQueryServer<>(tree, KeyCodec.integers())) {
+            for (int round = 0; round < 3; round++) {
+                System.out.println("round " + round + ", " + readers + " readers");
+                run("in-process", pool, readers, reader -> inProcess(head, keys, reader));
+                run("loopback", pool, readers, reader -> overLoopback(server.getPort(), keys, reader));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void run(String name, ExecutorService pool, int readers, Reader task) throws Exception {
+        List<Future<Long>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int reader = 0; reader < readers; reader++) {
+            int id = reader;
+            results.add(pool.submit((Callable<Long>) () -> task.run(id)));
+        }
+        long checksum = 0;
+        for (Future<Long> result : results) {
+            checksum += result.get();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-12s lookups %10.0f ops/s  scanned %8.2f Mkeys/s  (%d)%n",
+                name,
+                readers * LOOKUPS_PER_READER * 1e9 / nanos,
+                readers * (long) SCANS_PER_READER * SCAN_LENGTH * 1e3 / nanos,
+                checksum);
+    }
+
+    private static long inProcess(RedBlackTree<Integer> version, int keys, int reader) {
+        Random random = new Random(reader);
+        long checksum = 0;
+        for (int i = 0; i < LOOKUPS_PER_READER; i++) {
+            Integer value = version.get(random.nextInt(keys));
+            checksum += value == null ? 0 : value;
+        }
+        for (int i = 0; i < SCANS_PER_READER; i++) {
+            int from = random.nextInt(Math.max(1, keys - SCAN_LENGTH));
+            Iterator<Integer> scan = version.iterateRange(from, from + SCAN_LENGTH - 1);
+            while (scan.hasNext()) {
+                checksum += scan.next();
+            }
+        }
+        return checksum;
+    }
+
+    private static long overLoopback(int port, int keys, int reader) throws Exception {
+        Random random = new Random(reader);
+        long[] checksum = {0};
+        try (TreeQueryClient<Integer> client = new TreeQueryClient<>(port, KeyCodec.integers())) {
+            for (int i = 0; i < LOOKUPS_PER_READER; i++) {
+                Integer value = client.get(random.nextInt(keys));
+                checksum[0] += value == null ? 0 : value;
+            }
+            for (int i = 0; i < SCANS_PER_READER; i++) {
+                int from = random.nextInt(Math.max(1, keys - SCAN_LENGTH));
+                client.range(from, from + SCAN_LENGTH - 1, value -> checksum[0] += value);
+            }
+        }
+        return checksum[0];
+    }
+
+    private interface Reader {
+        long run(int reader) throws Exception;
+    }
+}
@@ -1,10 +1,15 @@
 package org.example.redblacktree;
 
 import org.junit.jupiter.api.Test;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.IntStream;
 import java.util.NoSuchElementException;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -366,6 +371,438 @@ class RedBlackTreeTest {
         assertNull(initTree.getRoot().getChildLeft(), "historisation violated. This is not initial tree.");
     }
 
+    @Test
+    void branchTest() {
+        List<Integer> treeList = List.of(3, 2, 4, 1);
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        treeList.forEach(tree::insert);
+        RedBlackTree<Integer> branch = tree.branch(1);
+        branch.insert(5);
+        tree.insert(6);
+
+        assertSame(tree, branch.getParentBranch());
+        assertEquals(1, branch.getForkVersion());
+        assertEquals(3, branch.getHistory().size(), "branch has to keep the history up to the fork point");
+        assertSame(tree.getHistory().get(1), branch.getHistory().get(1), "persistance violated. Branch does not share the fork version");
+        assertSame(tree.getHistory().get(1).getChildLeft(), branch.getRoot().getChildLeft(), "persistance violated. Branch does not share unchanged nodes");
+
+        List<Integer> branchElems = new ArrayList<>();
+        branch.forEach(branchElems::add);
+        assertEquals(List.of(2, 3, 5), branchElems);
+        List<Integer> treeElems = new ArrayList<>();
+        tree.forEach(treeElems::add);
+        assertEquals(List.of(1, 2, 3, 4, 6), treeElems);
+        assertTrue(branch.validateRedBlackProperties());
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.branch(10));
+    }
+
+    @Test
+    void internedNodesTest() {
+        List<Integer> treeList = List.of(7, 5, 8, 4, 6, 9, 2, 10, 3);
+        RedBlackTree<Integer> tree = RedBlackTree.withNodeInterning();
+        treeList.forEach(tree::insert);
+        Node<Integer> rootBeforeChurn = tree.getRoot();
+        tree.delete(3);
+        tree.insert(3);
+
+        assertEquals(rootBeforeChurn.toString(), tree.getRoot().toString());
+        assertSame(rootBeforeChurn, tree.getRoot(), "rebuilt subtree was not deduplicated");
+        assertTrue(tree.getInterner().getHitCount() > 0);
+        assertTrue(tree.validateRedBlackProperties());
+    }
+
+    @Test
+    void versionHashTest() {
+        List<Integer> treeList = List.of(7, 5, 8, 4, 6, 9, 2, 10, 3);
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        RedBlackTree<Integer> replica = new RedBlackTree<>();
+        treeList.forEach(tree::insert);
+        treeList.forEach(replica::insert);
+
+        assertNotSame(tree.getRoot(), replica.getRoot());
+        assertEquals(tree.getRoot().getSubtreeHash(), replica.getRoot().getSubtreeHash());
+        assertTrue(tree.structurallyEquals(replica));
+        assertTrue(tree.verifiedStructurallyEquals(replica));
+        assertEquals(List.of(), tree.diff(replica));
+
+        tree.delete(3);
+        tree.insert(3);
+        assertTrue(tree.versionsEqual(8, 10), "delete and reinsert should restore the same structure");
+        assertFalse(tree.versionsEqual(8, 9));
+
+        replica.delete(6);
+        replica.insert(11);
+        assertFalse(tree.structurallyEquals(replica));
+        assertFalse(tree.verifiedStructurallyEquals(replica));
+        assertEquals(List.of(6, 11), tree.diff(replica));
+    }
+
+    @Test
+    void keyLifetimeTest() {
+        List<Integer> treeList = List.of(3, 2, 4, 1);
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        treeList.forEach(tree::insert);
+        tree.delete(1);
+        assertEquals(List.of(new KeyLifetime(3, 4)), tree.getLifetimes(1));
+        tree.insert(1);
+        tree.insert(5);
+
+        assertEquals(List.of(new KeyLifetime(3, 4), new KeyLifetime(5, KeyLifetime.STILL_PRESENT)), tree.getLifetimes(1));
+        assertEquals(List.of(new KeyLifetime(0, KeyLifetime.STILL_PRESENT)), tree.getLifetimes(3));
+        assertEquals(List.of(), tree.getLifetimes(7));
+        assertTrue(tree.containsAt(1, 3));
+        assertFalse(tree.containsAt(1, 4));
+        assertTrue(tree.containsAt(1, 6));
+        assertFalse(tree.containsAt(5, 5));
+        assertFalse(tree.containsAt(1, 0));
+
+        RedBlackTree<Integer> branch = tree.branch(4);
+        branch.insert(7);
+        assertEquals(List.of(new KeyLifetime(3, 4)), branch.getLifetimes(1), "branch has to see the lifetimes of its ancestry only");
+        assertEquals(List.of(new KeyLifetime(5, KeyLifetime.STILL_PRESENT)), branch.getLifetimes(7));
+    }
+
+    @Test
+    void iterateVersionsTest() {
+        List<Integer> treeList = List.of(7, 5, 8, 4, 6, 9, 2, 10, 3);
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        treeList.forEach(tree::insert);
+        tree.delete(2);
+
+        List<Integer> values = new ArrayList<>();
+        List<BitSet> versions = new ArrayList<>();
+        Iterator<VersionedValue<Integer>> iterator = tree.iterateVersions(2, 8, 9);
+        iterator.forEachRemaining(versionedValue -> {
+            values.add(versionedValue.getValue());
+            versions.add(versionedValue.getVersions());
+        });
+
+        assertEquals(List.of(2, 3, 4, 5, 6, 7, 8, 9, 10), values);
+        assertEquals(BitSet.valueOf(new long[]{0b0100000000}), versions.get(0), "2 is deleted in version 9");
+        assertEquals(BitSet.valueOf(new long[]{0b1100000000}), versions.get(1), "3 is inserted in version 8");
+        assertEquals(BitSet.valueOf(new long[]{0b1100000100}), versions.get(5), "7 is in all requested versions");
+
+        List<Integer> rangeValues = new ArrayList<>();
+        tree.iterateVersionsInRange(4, 6, 2, 9).forEachRemaining(versionedValue -> rangeValues.add(versionedValue.getValue()));
+        assertEquals(List.of(4, 5, 6), rangeValues);
+    }
+
+    @Test
+    void iterateManyVersionsTest() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        for (int i = 0; i < 300; i++) {
+            tree.insert((i * 37) % 300);
+        }
+
+        int[] requested = {40, 41, 150, 299};
+        List<Integer> values = new ArrayList<>();
+        Iterator<VersionedValue<Integer>> iterator = tree.iterateVersionsInRange(20, 260, requested);
+        while (iterator.hasNext()) {
+            VersionedValue<Integer> versionedValue = iterator.next();
+            values.add(versionedValue.getValue());
+            for (int version : requested) {
+                assertEquals(tree.containsAt(versionedValue.getValue(), version), versionedValue.getVersions().get(version),
+                        versionedValue.getValue() + " in version " + version);
+            }
+        }
+        assertEquals(IntStream.rangeClosed(20, 260).boxed().toList(), values);
+    }
+
+    @Test
+    void iterateRangeTest() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        List.of(7, 5, 8, 4, 6, 9, 2, 10, 3).forEach(tree::insert);
+
+        List<Integer> values = new ArrayList<>();
+        tree.iterateRange(4, 8).forEachRemaining(values::add);
+        assertEquals(List.of(4, 5, 6, 7, 8), values);
+        values.clear();
+        tree.iterateRange(null, 3).forEachRemaining(values::add);
+        assertEquals(List.of(2, 3), values);
+        values.clear();
+        tree.iterateRange(11, null).forEachRemaining(values::add);
+        assertEquals(List.of(), values);
+        assertThrows(NoSuchElementException.class, () -> tree.iterateRange(11, 20).next());
+    }
+
+    @Test
+    void versionMetadataTest() {
+        List<Integer> treeList = List.of(7, 5, 8, 4, 6, 9, 2, 10, 3);
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        assertEquals(0, tree.size());
+        assertThrows(NoSuchElementException.class, tree::first);
+        treeList.forEach(tree::insert);
+        tree.delete(2);
+
+        assertEquals(8, tree.size());
+        assertEquals(3, tree.first());
+        assertEquals(10, tree.last());
+        assertEquals(treeList.size(), tree.getVersionInfo(8).getSize());
+        assertEquals(2, tree.getVersionInfo(8).getMin());
+        assertEquals(1, tree.getVersionInfo(0).getHeight());
+        assertEquals(1, tree.getVersionInfo(0).getBlackHeight());
+        assertEquals(tree.getRoot().getHeight(), tree.height());
+        assertEquals(4, tree.height());
+    }
+
+    @Test
+    void versionSnapshotsAreCachedAndReadOnlyTest() {
+        List<Integer> treeList = List.of(3, 2, 4, 1);
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        treeList.forEach(tree::insert);
+
+        RedBlackTree<Integer> snapshot = tree.getVersion(2);
+        assertSame(snapshot, tree.getVersion(2), "repeated getVersion calls should return the cached snapshot");
+        assertEquals(3, snapshot.size());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.insert(5));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.delete(3));
+
+        RedBlackTree<Integer> branch = snapshot.branch();
+        branch.insert(5);
+        assertEquals(4, branch.size());
+        assertSame(tree, branch.getParentBranch(), "a snapshot is branched through the tree it came from");
+        assertEquals(2, branch.getForkVersion());
+        assertEquals(4, branch.getHeadVersion() + 1, "the branch keeps the ancestry of the snapshot");
+        assertTrue(branch.containsAt(2, 1));
+
+        assertEquals(1, tree.snapshotCache().size(), "only requested versions are cached");
+        tree.releaseVersion(2);
+        assertEquals(0, tree.snapshotCache().size(), "a released version drops its snapshot");
+        assertThrows(IllegalArgumentException.class, snapshot::branch);
+    }
+
+    @Test
+    void cachedSnapshotLookupsDoNotAllocateTest() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        IntStream.range(0, 1000).forEach(tree::insert);
+        RedBlackTree<Integer> snapshot = tree.getVersion(500);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            if (tree.getVersion(500) != snapshot) {
+                fail("the cached snapshot has to be returned");
+            }
+        }
+        assertTrue(threads.getCurrentThreadAllocatedBytes() - before < 100_000, "a cached lookup must not allocate");
+    }
+
+    @Test
+    void buildFromTest() {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            values.add((i * 7919) % 20_000);
+        }
+        RedBlackTree<Integer> tree = RedBlackTree.buildFrom(values);
+
+        List<Integer> treeElems = new ArrayList<>();
+        tree.forEach(treeElems::add);
+        assertEquals(values.stream().distinct().sorted().toList(), treeElems);
+        assertEquals(20_000, tree.size());
+        assertEquals(1, tree.getHistory().size(), "bulk build has to commit a single version");
+        assertTrue(tree.validateRedBlackProperties());
+
+        tree.insert(20_000);
+        assertTrue(tree.validateRedBlackProperties());
+        assertEquals(0, RedBlackTree.<Integer>buildFrom(List.of()).size());
+        assertTrue(RedBlackTree.buildFrom(List.of(1, 2)).validateRedBlackProperties());
+    }
+
+    @Test
+    void nodePoolReusesReleasedNodesTest() {
+        NodePool<Integer> pool = new NodePool<>();
+        RedBlackTree<Integer> tree = RedBlackTree.withNodePool(pool);
+        RedBlackTree<Integer> plain = new RedBlackTree<>();
+        for (int i = 0; i < 200; i++) {
+            tree.insert(i);
+            plain.insert(i);
+        }
+        RedBlackTree<Integer> branch = tree.branch(100);
+        int height = tree.getVersionInfo(5).getHeight();
+        tree.releaseVersionsBefore(tree.getHeadVersion());
+
+        long allocated = pool.getAllocatedCount();
+        for (int i = 200; i < 400; i++) {
+            tree.insert(i);
+            plain.insert(i);
+            tree.releaseVersion(tree.getHeadVersion() - 1);
+        }
+        assertTrue(pool.getReusedCount() > 0);
+        assertTrue(pool.getAllocatedCount() - allocated < 20, "steady state writes should draw from the pool");
+        assertTrue(tree.structurallyEquals(plain));
+        assertTrue(tree.validateRedBlackProperties());
+        assertTrue(tree.getVersionInfo(5).isReleased());
+        assertEquals(6, tree.getVersionInfo(5).getSize());
+        assertEquals(height, tree.getVersionInfo(5).getHeight(), "released versions keep their metadata");
+        assertTrue(tree.getVersionInfo(5).toString().contains("size=6"));
+        assertEquals(1, tree.getHistory().size(), "released versions are not part of the history");
+        assertThrows(IllegalArgumentException.class, () -> tree.getVersion(5));
+        assertThrows(IllegalArgumentException.class, () -> tree.releaseVersion(tree.getHeadVersion()));
+        assertThrows(IllegalArgumentException.class, () -> tree.containsAt(3, 5));
+        assertTrue(tree.containsAt(3, tree.getHeadVersion()));
+
+        // the branch still holds references to the versions it shares
+        List<Integer> branchElems = new ArrayList<>();
+        branch.forEach(branchElems::add);
+        assertEquals(IntStream.rangeClosed(0, 100).boxed().toList(), branchElems);
+    }
+
+    @Test
+    void branchAfterReleaseTest() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        List.of(7, 5, 8, 3, 6, 9).forEach(tree::insert);
+        tree.delete(9);
+        tree.releaseVersion(2);
+        tree.releaseVersion(5);
+
+        RedBlackTree<Integer> branch = tree.branch(4);
+        assertEquals(List.of(new KeyLifetime(3, KeyLifetime.STILL_PRESENT)), branch.getLifetimes(3));
+        assertTrue(branch.containsAt(3, 4));
+        assertFalse(branch.containsAt(9, 4));
+        assertEquals(List.of(), tree.branch().getLifetimes(9), "9 only existed in the released version 5");
+        assertEquals(List.of(new KeyLifetime(3, KeyLifetime.STILL_PRESENT)), tree.getLifetimes(3));
+        assertThrows(IllegalArgumentException.class, () -> tree.branch(2));
+
+        branch.insert(4);
+        assertTrue(branch.containsAt(4, 5));
+        assertEquals(5, branch.getHistory().size(), "version 2 of the six in the branch was released");
+    }
+
+    @Test
+    void releasedLifetimesAreDroppedTest() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        tree.insert(-1);
+        for (int i = 0; i < 2000; i++) {
+            tree.insert(i);
+            tree.delete(i);
+            tree.releaseVersion(tree.getHeadVersion() - 1);
+            tree.releaseVersion(tree.getHeadVersion() - 2);
+        }
+        assertTrue(tree.getLifetimeIndex().size() < 100, "lifetimes within released versions have to be dropped");
+        assertEquals(List.of(), tree.getLifetimes(5));
+        assertEquals(List.of(new KeyLifetime(0, KeyLifetime.STILL_PRESENT)), tree.getLifetimes(-1));
+        assertFalse(tree.containsAt(5, tree.getHeadVersion()));
+    }
+
+    @Test
+    void nonThrowingWritesTest() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        assertTrue(tree.add(5));
+        assertTrue(tree.add(3));
+        assertFalse(tree.add(5));
+        assertFalse(tree.remove(4));
+        assertEquals(1, tree.getHeadVersion(), "unchanged writes must not push versions");
+        assertTrue(tree.contains(3));
+        assertFalse(tree.contains(4));
+        assertNull(tree.get(4));
+        assertEquals(3, tree.get(3));
+        assertTrue(tree.remove(3));
+        assertFalse(tree.contains(3));
+
+        RedBlackTree<Entry> entries = new RedBlackTree<>();
+        assertNull(entries.upsert(new Entry("b", 1)));
+        entries.upsert(new Entry("a", 1));
+        entries.upsert(new Entry("c", 1));
+        int head = entries.getHeadVersion();
+        assertEquals(new Entry("b", 1), entries.upsert(new Entry("b", 2)));
+        assertEquals(2, entries.get(new Entry("b", 0)).value());
+        assertEquals(head + 1, entries.getHeadVersion());
+        assertEquals(3, entries.size());
+        assertEquals(1, entries.getVersion(head).get(new Entry("b", 0)).value());
+
+        entries.upsert(new Entry("b", 2));
+        assertFalse(entries.replace(new Entry("b", 1), new Entry("b", 3)));
+        assertEquals(head + 1, entries.getHeadVersion());
+        assertTrue(entries.replace(new Entry("b", 2), new Entry("b", 3)));
+        assertEquals(3, entries.get(new Entry("b", 0)).value());
+        assertThrows(IllegalArgumentException.class, () -> entries.replace(new Entry("b", 3), new Entry("d", 3)));
+        assertTrue(entries.validateRedBlackProperties());
+    }
+
+    @Test
+    void removeMatchesByKeyAfterUpsertsTest() {
+        RedBlackTree<Entry> entries = new RedBlackTree<>();
+        for (String key : List.of("a", "b", "c", "d", "e")) {
+            entries.upsert(new Entry(key, 1));
+            entries.upsert(new Entry(key, 2));
+        }
+        // the probe only compares equal to the stored root entry, it is not equal to it
+        assertEquals(new Entry("b", 2), entries.getRoot().getValue());
+        assertTrue(entries.remove(new Entry("b", 0)));
+        assertFalse(entries.contains(new Entry("b", 0)));
+        assertFalse(entries.remove(new Entry("b", 0)));
+        assertFalse(entries.add(new Entry("a", 0)));
+
+        List<Entry> remaining = new ArrayList<>();
+        entries.forEach(remaining::add);
+        assertEquals(List.of(new Entry("a", 2), new Entry("c", 2), new Entry("d", 2), new Entry("e", 2)), remaining);
+        assertEquals(List.of(new KeyLifetime(2, 10)), entries.getLifetimes(new Entry("b", 0)));
+        assertThrows(NoSuchElementException.class, () -> entries.delete(new Entry("b", 0)));
+        assertThrows(IllegalArgumentException.class, () -> entries.insert(new Entry("a", 0)));
+        assertTrue(entries.validateRedBlackProperties());
+    }
+
+    private record Entry(String key, int value) implements Comparable<Entry> {
+        @Override
+        public int compareTo(Entry other) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    @Test
+    void lookupCacheTest() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        List.of(7, 5, 8, 4, 6, 9, 2).forEach(tree::insert);
+        tree.enableLookupCache(2);
+        LookupCache<Integer> cache = tree.getLookupCache();
+
+        assertEquals(6, tree.findNode(6).getValue());
+        assertEquals(6, tree.findNode(6).getValue());
+        assertFalse(tree.contains(3));
+        assertFalse(tree.contains(3));
+        assertThrows(NoSuchElementException.class, () -> tree.findNode(3));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        tree.insert(3);
+        assertTrue(tree.contains(3), "a new version must invalidate cached entries");
+        assertEquals(3, cache.getMissCount());
+        assertEquals(2, cache.size());
+
+        // with every slot referenced the clock hand clears both and evicts 6, then 6 evicts 3
+        tree.contains(3);
+        tree.get(9);
+        assertEquals(6, tree.get(6));
+        assertEquals(5, cache.getMissCount());
+        assertEquals(2, cache.size());
+        assertEquals(4.0 / 9, cache.getHitRate());
+
+        tree.disableLookupCache();
+        assertNull(tree.getLookupCache());
+        assertEquals(9, tree.findNode(9).getValue());
+    }
+
+    @Test
+    void lookupCacheDropsReleasedVersionsTest() throws InterruptedException {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        List.of(7, 5, 8, 4, 6, 9, 2).forEach(tree::insert);
+        tree.enableLookupCache(16);
+        int version = tree.getHeadVersion();
+        WeakReference<Node<Integer>> cached = new WeakReference<>(tree.findNode(2));
+        WeakReference<Version<Integer>> released = new WeakReference<>(tree.getVersionInfo(version));
+
+        tree.delete(2);
+        tree.releaseVersion(version);
+        for (int i = 0; i < 10 && (cached.get() != null || released.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(cached.get(), "a released version's nodes must not stay reachable through the cache");
+        assertNull(released.get());
+        assertFalse(tree.contains(2));
+        assertTrue(tree.contains(9));
+    }
+
 
     private void assertInsertCorrect(List<Integer> treeList) {
         RedBlackTree<Integer> tree = new RedBlackTree<>();
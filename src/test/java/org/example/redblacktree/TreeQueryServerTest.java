@@ -0,0 +1,107 @@
+package org.example.redblacktree;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TreeQueryServerTest {
+
+    @Test
+    void queriesTest() throws IOException {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        List.of(7, 5, 8, 4, 6, 9, 2).forEach(tree::insert);
+
+        try (TreeQueryServer<Integer> server = new TreeQueryServer<>(tree, KeyCodec.integers());
+             TreeQueryClient<Integer> client = new TreeQueryClient<>(server.getPort(), KeyCodec.integers())) {
+            assertEquals(6, client.get(6));
+            assertEquals(6, client.getLastVersion());
+            assertNull(client.get(3));
+            assertNull(client.get(6, 3), "6 was inserted in version 4");
+            assertEquals(7, client.versionCount());
+
+            List<Integer> range = new ArrayList<>();
+            client.range(5, 8, range::add);
+            assertEquals(List.of(5, 6, 7, 8), range);
+            range.clear();
+            client.range(3, 100, 2, range::add);
+            assertEquals(List.of(5, 7, 8), range);
+
+            List<Integer> diff = new ArrayList<>();
+            client.diff(2, 6, diff::add);
+            assertEquals(List.of(2, 4, 6, 9), diff);
+
+            IOException error = assertThrows(IOException.class, () -> client.get(1, 42));
+            assertTrue(error.getMessage().contains("42"));
+            assertEquals(7, client.get(7), "the connection has to stay usable after an error");
+
+            tree.insert(3);
+            assertEquals(3, client.get(3));
+            assertEquals(7, client.getLastVersion());
+        }
+    }
+
+    @Test
+    void oversizedKeyLengthClosesConnectionTest() throws IOException {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        List.of(7, 5, 8).forEach(tree::insert);
+
+        try (TreeQueryServer<Integer> server = new TreeQueryServer<>(tree, KeyCodec.integers())) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeByte(QueryProtocol.GET);
+                out.writeInt(QueryProtocol.HEAD);
+                out.writeInt(Integer.MAX_VALUE);
+                out.flush();
+                assertEquals(-1, new DataInputStream(socket.getInputStream()).read(), "the server must drop the connection");
+            }
+            try (TreeQueryClient<Integer> client = new TreeQueryClient<>(server.getPort(), KeyCodec.integers())) {
+                assertEquals(5, client.get(5));
+            }
+        }
+    }
+
+    @Test
+    void concurrentReadersWhileWritingTest() throws Exception {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        for (int i = 0; i < 1_000; i += 2) {
+            tree.insert(i);
+        }
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try (TreeQueryServer<Integer> server = new TreeQueryServer<>(tree, KeyCodec.integers())) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int reader = 0; reader < 4; reader++) {
+                results.add(readers.submit(() -> {
+                    try (TreeQueryClient<Integer> client = new TreeQueryClient<>(server.getPort(), KeyCodec.integers())) {
+                        int scanned = 0;
+                        for (int round = 0; round < 20; round++) {
+                            List<Integer> range = new ArrayList<>();
+                            client.range(0, 998, 499, range::add);
+                            assertEquals(500, range.size(), "a pinned version must not see later writes");
+                            scanned += range.size();
+                        }
+                        return scanned;
+                    }
+                }));
+            }
+            for (int i = 1; i < 200; i += 2) {
+                tree.insert(i);
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(10_000, result.get());
+            }
+        } finally {
+            readers.shutdown();
+        }
+    }
+}
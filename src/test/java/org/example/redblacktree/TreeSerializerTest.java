@@ -0,0 +1,124 @@
+package org.example.redblacktree;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TreeSerializerTest {
+
+    @Test
+    void historyRoundTripTest() throws IOException {
+        List<Integer> treeList = List.of(7, 5, 8, 4, 6, 9, 2, 10, 3);
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        treeList.forEach(tree::insert);
+        tree.delete(9);
+        tree.delete(4);
+
+        RedBlackTree<Integer> copy = roundTrip(new TreeSerializer<>(KeyCodec.integers()), tree);
+
+        assertEquals(tree.getHistory().size(), copy.getHistory().size(), "not all versions were read");
+        for (int version = 0; version < tree.getHistory().size(); version++) {
+            assertEquals(tree.getVersion(version).toString(), copy.getVersion(version).toString(), "version " + version + " differs");
+        }
+        assertTrue(copy.validateRedBlackProperties());
+    }
+
+    @Test
+    void writeAfterReleaseTest() throws IOException {
+        RedBlackTree<Integer> tree = RedBlackTree.withNodePool(new NodePool<Integer>());
+        List.of(7, 5, 8, 4, 6, 9).forEach(tree::insert);
+        tree.releaseVersionsBefore(3);
+
+        RedBlackTree<Integer> copy = roundTrip(new TreeSerializer<>(KeyCodec.integers()), tree);
+        assertEquals(3, copy.getHistory().size(), "only the retained versions are written");
+        assertEquals(tree.getVersion(3).toString(), copy.getVersion(0).toString());
+        assertEquals(tree.toString(), copy.toString());
+        assertEquals(List.of(new KeyLifetime(0, KeyLifetime.STILL_PRESENT)), copy.getLifetimes(4));
+    }
+
+    @Test
+    void sharedNodesAreWrittenOnceTest() throws IOException {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        List.of(3, 2, 4, 1).forEach(tree::insert);
+        tree.insert(5);
+
+        RedBlackTree<Integer> copy = roundTrip(new TreeSerializer<>(KeyCodec.integers()), tree);
+        assertSame(copy.getHistory().get(3).getChildLeft(), copy.getHistory().get(4).getChildLeft(), "shared subtree was duplicated");
+    }
+
+    @Test
+    void largeKeysTest() throws IOException {
+        RedBlackTree<String> tree = new RedBlackTree<>();
+        char[] filler = new char[100];
+        Arrays.fill(filler, 'x');
+        List.of("b", "a", new String(filler), "c").forEach(tree::insert);
+
+        RedBlackTree<String> copy = roundTrip(new TreeSerializer<>(KeyCodec.strings(), 32), tree);
+        List<String> treeElems = new ArrayList<>();
+        copy.forEach(treeElems::add);
+        assertEquals(List.of("a", "b", "c", new String(filler)), treeElems);
+    }
+
+    @Test
+    void truncatedInputTest() throws IOException {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        List.of(3, 2, 4).forEach(tree::insert);
+        TreeSerializer<Integer> serializer = new TreeSerializer<>(KeyCodec.integers());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.write(tree, Channels.newChannel(out));
+        byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() - 3);
+
+        assertThrows(EOFException.class, () -> serializer.read(Channels.newChannel(new ByteArrayInputStream(truncated))));
+    }
+
+    @Test
+    void subclassesAreRejectedTest() {
+        MultisetRedBlackTree<Integer> multiset = new MultisetRedBlackTree<>();
+        List.of(3, 3, 4).forEach(multiset::insert);
+        TreeSerializer<Integer> serializer = new TreeSerializer<>(KeyCodec.integers());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThrows(IllegalArgumentException.class, () -> serializer.write(multiset, Channels.newChannel(out)),
+                "counts would be lost in the format");
+        assertThrows(IllegalArgumentException.class, () -> serializer.writeSnapshot(multiset, Channels.newChannel(out)));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void corruptLengthsAndCountsTest() throws IOException {
+        RedBlackTree<String> tree = new RedBlackTree<>();
+        tree.insert("key");
+        TreeSerializer<String> serializer = new TreeSerializer<>(KeyCodec.strings());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.write(tree, Channels.newChannel(out));
+
+        // magic and format version, then the version count, the node count and the first node's header
+        int versionCountOffset = 2 * Integer.BYTES;
+        int newNodesOffset = versionCountOffset + Integer.BYTES;
+        int keyLengthOffset = newNodesOffset + Integer.BYTES + 1 + 2 * Integer.BYTES;
+        for (int[] corruption : new int[][] {
+                {keyLengthOffset, -7}, {keyLengthOffset, Integer.MAX_VALUE - 8},
+                {newNodesOffset, -1}, {versionCountOffset, Integer.MIN_VALUE}}) {
+            byte[] corrupt = out.toByteArray();
+            ByteBuffer.wrap(corrupt).putInt(corruption[0], corruption[1]);
+            assertThrows(IOException.class, () -> serializer.read(Channels.newChannel(new ByteArrayInputStream(corrupt))),
+                    corruption[1] + " at offset " + corruption[0]);
+        }
+    }
+
+    private <T extends Comparable<T>> RedBlackTree<T> roundTrip(TreeSerializer<T> serializer, RedBlackTree<T> tree) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.write(tree, Channels.newChannel(out));
+        return serializer.read(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+    }
+}